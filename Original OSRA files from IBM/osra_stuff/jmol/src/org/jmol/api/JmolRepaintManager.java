@@ -27,6 +27,12 @@ public interface JmolRepaintManager {
 
   void render(GData gdata, ModelSet modelSet, boolean isFirstPass, int[] minMax);
 
+  /**
+   * @return the platform speed, 1 (slow) to 10 (fast), to be used for
+   *         rendering in motion when platformSpeed is 0
+   */
+  int getMotionSpeed();
+
   String renderExport(GData gdata, ModelSet modelSet, Map<String, Object> params);
 
 }
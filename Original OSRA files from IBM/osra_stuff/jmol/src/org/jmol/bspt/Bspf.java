@@ -46,6 +46,11 @@ public final class Bspf {
   Bspt[] bspts;
   protected boolean isValid = false;
   boolean[] bsptsValid;
+
+  /**
+   * when set, initialize() bulk-loads the trees; see Bspt.load()
+   */
+  public boolean bulkLoad;
   
   public void validate(boolean isValid) {
     this.isValid = isValid;
@@ -63,8 +68,27 @@ public final class Bspf {
     return bspts.length > bsptIndex && bspts[bsptIndex] != null
         && bsptsValid[bsptIndex];
   }
+
+  /**
+   * A grid returns the points near a center cell by cell, so callers that
+   * act on the points in the order found, such as autobonding, must sort
+   * them to get the same result whatever the size of the cells.
+   * 
+   * @param bsptIndex
+   * @return true if the tree for this index was built as a grid
+   */
+  public boolean isGrid(int bsptIndex) {
+    return bspts.length > bsptIndex && bspts[bsptIndex] != null
+        && bspts[bsptIndex].grid != null;
+  }
   
   CubeIterator[] cubeIterators;
+
+  /**
+   * released iterators, for acquireCubeIterator()
+   */
+  private CubeIterator[] pool = new CubeIterator[0];
+  private int poolCount;
   
   public Bspf(int dimMax) {
     this.dimMax = dimMax;
@@ -78,6 +102,17 @@ public final class Bspf {
   }
   
   public void addTuple(int bsptIndex, P3 tuple) {
+    getBspt(bsptIndex).addTuple(tuple);
+  }
+
+  /**
+   * Creates the tree for the given index if it does not exist yet. Once all
+   * trees are created, different trees can be filled by different threads.
+   * 
+   * @param bsptIndex
+   * @return the tree
+   */
+  public Bspt getBspt(int bsptIndex) {
     if (bsptIndex >= bspts.length) {
       bspts = (Bspt[]) AU.arrayCopyObject(bspts, bsptIndex + 1);
       bsptsValid = AU.arrayCopyBool(bsptsValid, bsptIndex + 1);
@@ -86,7 +121,7 @@ public final class Bspf {
     if (bspt == null) {
       bspt = bspts[bsptIndex] = new Bspt(dimMax, bsptIndex);
     }
-    bspt.addTuple(tuple);
+    return bspt;
   }
 
   public void stats() {
@@ -126,11 +161,88 @@ public final class Bspf {
       return bspts[bsptIndex].allocateCubeIterator();
   }
 
+  /**
+   * Unlike getCubeIterator(), which returns the same iterator to every
+   * caller, this returns an iterator that belongs to the caller until it is
+   * passed to releaseCubeIterator(), so that threads can search at once. The
+   * iterators are pooled, so a search allocates nothing in the long run.
+   * 
+   * @param bsptIndex
+   * @return an iterator for the given tree
+   */
+  public synchronized CubeIterator acquireCubeIterator(int bsptIndex) {
+    if (poolCount == 0)
+      return getNewCubeIterator(bsptIndex);
+    CubeIterator iter = pool[--poolCount];
+    pool[poolCount] = null;
+    iter.set(bspts[bsptIndex]);
+    return iter;
+  }
+
+  /**
+   * Points an iterator from acquireCubeIterator() at another tree, so that a
+   * thread can search several models without going back to the pool.
+   * 
+   * @param iter
+   *        an iterator from acquireCubeIterator()
+   * @param bsptIndex
+   */
+  public void setCubeIterator(CubeIterator iter, int bsptIndex) {
+    iter.set(bspts[bsptIndex]);
+  }
+
+  /**
+   * @param iter
+   *        an iterator from acquireCubeIterator()
+   */
+  public synchronized void releaseCubeIterator(CubeIterator iter) {
+    iter.release();
+    if (poolCount == pool.length)
+      pool = (CubeIterator[]) AU.arrayCopyObject(pool, poolCount + 4);
+    pool[poolCount++] = iter;
+  }
+
+  /**
+   * Tells the tree that a point has moved, so that it can be updated in place
+   * if it was built with ids. Otherwise, or when too many points have moved,
+   * the tree is marked invalid, to be rebuilt when it is next needed.
+   * 
+   * @param bsptIndex
+   * @param pt
+   * @param id
+   *        the id of the point given when the tree was built
+   */
+  public void moveTuple(int bsptIndex, P3 pt, int id) {
+    if (isInitializedIndex(bsptIndex) && !bspts[bsptIndex].moveTuple(pt, id))
+      bsptsValid[bsptIndex] = false;
+  }
+
+  /**
+   * Calls the visitor for every point of the given tree within radius of
+   * center. Any number of threads can do this at once.
+   * 
+   * @param bsptIndex
+   * @param center
+   * @param radius
+   * @param hemisphereOnly
+   * @param visitor
+   */
+  public void forEachWithin(int bsptIndex, P3 center, float radius,
+                            boolean hemisphereOnly, PointVisitor visitor) {
+    if (bsptIndex < bspts.length && bspts[bsptIndex] != null)
+      bspts[bsptIndex].forEachWithin(center, radius, hemisphereOnly, visitor);
+  }
+
   public synchronized void initialize(int modelIndex, P3[] atoms, BS modelAtomBitSet) {
-    if (bspts[modelIndex] != null)
-      bspts[modelIndex].reset();
-    for (int i = modelAtomBitSet.nextSetBit(0); i >= 0; i = modelAtomBitSet.nextSetBit(i + 1))
-      addTuple(modelIndex, atoms[i]);
+    int n = modelAtomBitSet.cardinality();
+    P3[] tuples = new P3[n];
+    int[] ids = new int[n];
+    n = 0;
+    for (int i = modelAtomBitSet.nextSetBit(0); i >= 0; i = modelAtomBitSet.nextSetBit(i + 1)) {
+      ids[n] = i;
+      tuples[n++] = atoms[i];
+    }
+    getBspt(modelIndex).build(tuples, ids, n, bulkLoad);
     bsptsValid[modelIndex] = true;
   }
 
@@ -25,6 +25,7 @@ package org.jmol.bspt;
 
 import org.jmol.util.Logger;
 
+import javajs.util.AU;
 import javajs.util.SB;
 import javajs.util.P3;
 
@@ -80,11 +81,42 @@ public final class Bspt {
   final static int leafCountMax = 2;
   // this corresponds to the max height of the tree
   final static int MAX_TREE_DEPTH = 100;
+  /**
+   * the smallest number of points for which loadGrid() builds a grid
+   */
+  public final static int gridMinCount = 20000;
   int treeDepth;
   int dimMax;
   int index;
   Element eleRoot;
 
+  /**
+   * the flat index built by load(), used instead of eleRoot when not null
+   */
+  KdIndex kd;
+
+  /**
+   * the cell list built by loadGrid(), used instead of eleRoot when not null
+   */
+  CellGrid grid;
+
+  /**
+   * the most points that moveTuple() and insertTuple() keep outside of the
+   * index before the tree has to be rebuilt
+   */
+  final static int extraCountMax = 128;
+
+  // incremental updates of kd or grid, when built with ids:
+  // the old copy of the coordinates of a moved or removed point is set to
+  // NaN, so searches pass over it, and moved and inserted points are kept
+  // in extra[], which is searched point by point. slots[id] is the position
+  // of a point in the index, -2 - k for extra[k], or -1.
+  private int[] slots;
+  P3[] extra;
+  private int[] extraIds;
+  int extraCount;
+  private int removedCount;
+
   /**
    * Create a bspt with the specified number of dimensions. For a 3-dimensional
    * tree (x,y,z) call new Bspt(3).
@@ -101,6 +133,12 @@ public final class Bspt {
   void reset() {
     eleRoot = new Leaf(this, null, 0);
     treeDepth = 1;
+    kd = null;
+    grid = null;
+    slots = null;
+    extra = null;
+    extraIds = null;
+    extraCount = removedCount = 0;
   }
 
   /**
@@ -109,9 +147,364 @@ public final class Bspt {
    * @param tuple
    */
   public void addTuple(P3 tuple) {
+    if (kd != null || grid != null) {
+      // a point added after a bulk load goes to a tree of Node/Leaf
+      // elements rebuilt from the loaded points
+      P3[] tuples = getLiveTuples();
+      reset();
+      for (int i = 0; i < tuples.length; i++)
+        eleRoot = eleRoot.addTuple(0, tuples[i]);
+    }
     eleRoot = eleRoot.addTuple(0, tuple);
   }
 
+  /**
+   * Replaces the contents of the tree with the given points, all at once.
+   * The tree is balanced and stored in flat arrays, which is faster to build
+   * and to search than calling addTuple for each point.
+   * 
+   * @param tuples
+   * @param n
+   *        the number of points to take from tuples
+   */
+  public void load(P3[] tuples, int n) {
+    load(tuples, null, n);
+  }
+
+  /**
+   * As load(tuples, n), keeping an id for each point, which allows updating
+   * the tree incrementally with moveTuple() and related methods.
+   * 
+   * @param tuples
+   * @param ids
+   *        non-negative ids, one for each point, or null
+   * @param n
+   */
+  public void load(P3[] tuples, int[] ids, int n) {
+    reset();
+    kd = new KdIndex(tuples, ids, n);
+    treeDepth = kd.depth + 1;
+  }
+
+  /**
+   * Replaces the contents of the tree with a uniform grid of the given
+   * points, if there are at least gridMinCount of them and they fill their
+   * bounding box evenly enough. For such sets, finding the neighbors of a
+   * point in a grid is faster than in any tree.
+   * 
+   * @param tuples
+   * @param n
+   *        the number of points to take from tuples
+   * @return false if no grid was built; the tree is then unchanged
+   */
+  public boolean loadGrid(P3[] tuples, int n) {
+    return loadGrid(tuples, null, n);
+  }
+
+  /**
+   * As loadGrid(tuples, n), keeping an id for each point; see load().
+   * 
+   * @param tuples
+   * @param ids
+   * @param n
+   * @return false if no grid was built
+   */
+  public boolean loadGrid(P3[] tuples, int[] ids, int n) {
+    if (n < gridMinCount)
+      return false;
+    CellGrid grid = CellGrid.newGrid(tuples, ids, n);
+    if (grid == null)
+      return false;
+    reset();
+    this.grid = grid;
+    return true;
+  }
+
+  /**
+   * Replaces the contents of the tree with the given points, as a grid if
+   * loadGrid() accepts them, otherwise by load() if bulkLoad is set or else
+   * by addTuple, in the given order. A grid returns the points near a center
+   * cell by cell, not in the order of a tree; see Bspf.isGrid().
+   * 
+   * @param tuples
+   * @param ids
+   *        ids for incremental updates of a grid or bulk-loaded tree, or null
+   * @param n
+   * @param bulkLoad
+   */
+  public void build(P3[] tuples, int[] ids, int n, boolean bulkLoad) {
+    if (loadGrid(tuples, ids, n))
+      return;
+    if (bulkLoad) {
+      load(tuples, ids, n);
+      return;
+    }
+    reset();
+    for (int i = 0; i < n; i++)
+      eleRoot = eleRoot.addTuple(0, tuples[i]);
+  }
+
+  /**
+   * Updates the tree for a point that has just moved. Only a grid or a
+   * bulk-loaded tree built with ids can be updated this way, and only for
+   * up to extraCountMax points; after that, the tree must be rebuilt. Points
+   * that are not in the tree are ignored.
+   * 
+   * @param pt
+   * @param id
+   * @return false if the tree could not be updated and must be rebuilt
+   */
+  public boolean moveTuple(P3 pt, int id) {
+    if (!isUpdatable())
+      return false;
+    int slot = (id < slots.length ? slots[id] : -1);
+    if (slot < 0)
+      return true; // not in the tree, or already searched where it is now
+    if (extraCount == extraCountMax)
+      return false;
+    removeSlot(slot);
+    addExtra(pt, id);
+    return true;
+  }
+
+  /**
+   * Adds a point to a tree that can be updated; see moveTuple().
+   * 
+   * @param pt
+   * @param id
+   * @return false if the tree could not be updated and must be rebuilt
+   */
+  public boolean insertTuple(P3 pt, int id) {
+    if (!isUpdatable() || extraCount == extraCountMax)
+      return false;
+    if (id >= slots.length) {
+      int n = slots.length;
+      slots = AU.arrayCopyI(slots, Math.max(id + 1, n * 2));
+      for (int i = slots.length; --i >= n;)
+        slots[i] = -1;
+    }
+    if (slots[id] != -1)
+      return moveTuple(pt, id);
+    addExtra(pt, id);
+    return true;
+  }
+
+  /**
+   * Removes a point from a tree that can be updated; see moveTuple().
+   * 
+   * @param id
+   * @return false if the tree could not be updated and must be rebuilt
+   */
+  public boolean removeTuple(int id) {
+    if (!isUpdatable())
+      return false;
+    int slot = (id < slots.length ? slots[id] : -1);
+    if (slot >= 0) {
+      removeSlot(slot);
+    } else if (slot < -1) {
+      // move the last extra point into the gap
+      int k = -2 - slot;
+      if (k < --extraCount) {
+        extra[k] = extra[extraCount];
+        extraIds[k] = extraIds[extraCount];
+        slots[extraIds[k]] = -2 - k;
+      }
+      extra[extraCount] = null;
+    }
+    if (slot != -1)
+      slots[id] = -1;
+    return true;
+  }
+
+  private boolean isUpdatable() {
+    int[] ids = (kd != null ? kd.ids : grid != null ? grid.ids : null);
+    if (ids == null)
+      return false;
+    if (slots == null) {
+      int max = -1;
+      for (int i = ids.length; --i >= 0;)
+        if (ids[i] > max)
+          max = ids[i];
+      slots = new int[max + 1];
+      for (int i = max + 1; --i >= 0;)
+        slots[i] = -1;
+      for (int i = ids.length; --i >= 0;)
+        slots[ids[i]] = i;
+      extra = new P3[extraCountMax];
+      extraIds = new int[extraCountMax];
+    }
+    // a tree that is mostly holes is as good as invalid
+    return (removedCount <= ids.length / 4);
+  }
+
+  private void removeSlot(int slot) {
+    float[] xyz = (kd == null ? grid.xyz : kd.xyz);
+    xyz[slot * 3] = xyz[slot * 3 + 1] = xyz[slot * 3 + 2] = Float.NaN;
+    removedCount++;
+  }
+
+  private void addExtra(P3 pt, int id) {
+    extra[extraCount] = pt;
+    extraIds[extraCount] = id;
+    slots[id] = -2 - extraCount++;
+  }
+
+  /**
+   * @return the points of a grid or bulk-loaded tree that have not been
+   *         removed, including the ones that moved
+   */
+  private P3[] getLiveTuples() {
+    P3[] tuples = (kd == null ? grid.tuples : kd.tuples);
+    float[] xyz = (kd == null ? grid.xyz : kd.xyz);
+    P3[] live = new P3[tuples.length - removedCount + extraCount];
+    int n = 0;
+    for (int i = 0; i < tuples.length; i++)
+      if (!Float.isNaN(xyz[i * 3]))
+        live[n++] = tuples[i];
+    for (int i = 0; i < extraCount; i++)
+      live[n++] = extra[i];
+    return live;
+  }
+
+  /**
+   * Calls the visitor for every point within radius of center. Unlike a
+   * CubeIterator, this keeps all of its state on the stack, so it allocates
+   * nothing and any number of threads can search the same tree at once, as
+   * long as no points are being added.
+   * 
+   * @param center
+   * @param radius
+   * @param hemisphereOnly
+   *        only points with x >= center.x
+   * @param visitor
+   */
+  public void forEachWithin(P3 center, float radius, boolean hemisphereOnly,
+                            PointVisitor visitor) {
+    float cx = center.x, cy = center.y, cz = center.z;
+    float r2 = radius * radius;
+    if (kd != null) {
+      if (kd.count > 0)
+        visitKd(0, 0, kd.count, cx, cy, cz, radius, r2, hemisphereOnly,
+            visitor);
+    } else if (grid != null) {
+      CellGrid g = grid;
+      int ix0 = g.getIndex((hemisphereOnly ? cx : cx - radius) - g.x0, g.nx);
+      int ix1 = g.getIndex(cx + radius - g.x0, g.nx);
+      int iy0 = g.getIndex(cy - radius - g.y0, g.ny);
+      int iy1 = g.getIndex(cy + radius - g.y0, g.ny);
+      int iz0 = g.getIndex(cz - radius - g.z0, g.nz);
+      int iz1 = g.getIndex(cz + radius - g.z0, g.nz);
+      for (int ix = ix0; ix <= ix1; ix++)
+        for (int iy = iy0; iy <= iy1; iy++) {
+          int cell = (ix * g.ny + iy) * g.nz;
+          visitRange(g.tuples, g.xyz, g.cellStart[cell + iz0],
+              g.cellStart[cell + iz1 + 1], cx, cy, cz, r2, hemisphereOnly,
+              visitor);
+        }
+    } else {
+      visitElement(eleRoot, cx, cy, cz, radius, r2, hemisphereOnly, visitor);
+    }
+    for (int i = 0; i < extraCount; i++) {
+      P3 t = extra[i];
+      float dx = t.x - cx;
+      if (hemisphereOnly && dx < 0)
+        continue;
+      float dy = t.y - cy;
+      float dz = t.z - cz;
+      float d2 = dx * dx + dy * dy + dz * dz;
+      if (d2 <= r2)
+        visitor.visit(t, d2);
+    }
+  }
+
+  private static void visitElement(Element ele, float cx, float cy, float cz,
+                                   float radius, float r2,
+                                   boolean hemisphereOnly, PointVisitor visitor) {
+    while (ele instanceof Node) {
+      Node node = (Node) ele;
+      float minValue = (node.dim == 0 ? cx : node.dim == 1 ? cy : cz);
+      float maxValue = minValue + radius;
+      if (!hemisphereOnly || node.dim != 0)
+        minValue -= radius;
+      boolean isLeft = (minValue <= node.maxLeft && maxValue >= node.minLeft);
+      boolean isRight = (maxValue >= node.minRight && minValue <= node.maxRight);
+      if (isLeft && isRight)
+        visitElement(node.eleRight, cx, cy, cz, radius, r2, hemisphereOnly,
+            visitor);
+      if (!isLeft && !isRight)
+        return;
+      ele = (isLeft ? node.eleLeft : node.eleRight);
+    }
+    Leaf leaf = (Leaf) ele;
+    for (int i = 0; i < leaf.count; i++) {
+      P3 t = leaf.tuples[i];
+      float dx = t.x - cx;
+      if (hemisphereOnly && dx < 0)
+        continue;
+      float dy = t.y - cy;
+      float dz = t.z - cz;
+      float d2 = dx * dx + dy * dy + dz * dz;
+      if (d2 <= r2)
+        visitor.visit(t, d2);
+    }
+  }
+
+  private void visitKd(int node, int lo, int hi, float cx, float cy,
+                       float cz, float radius, float r2,
+                       boolean hemisphereOnly, PointVisitor visitor) {
+    int dim;
+    while ((dim = kd.dims[node]) >= 0) {
+      float minValue = (dim == 0 ? cx : dim == 1 ? cy : cz);
+      float maxValue = minValue + radius;
+      if (!hemisphereOnly || dim != 0)
+        minValue -= radius;
+      float[] bounds = kd.bounds;
+      int pt = node * 4;
+      int mid = (lo + hi) >>> 1;
+      boolean isLeft = (minValue <= bounds[pt + 1] && maxValue >= bounds[pt]);
+      boolean isRight = (maxValue >= bounds[pt + 2]
+          && minValue <= bounds[pt + 3]);
+      if (isLeft && isRight)
+        visitKd(node * 2 + 2, mid, hi, cx, cy, cz, radius, r2,
+            hemisphereOnly, visitor);
+      if (isLeft) {
+        node = node * 2 + 1;
+        hi = mid;
+      } else if (isRight) {
+        node = node * 2 + 2;
+        lo = mid;
+      } else {
+        return;
+      }
+    }
+    visitRange(kd.tuples, kd.xyz, lo, hi, cx, cy, cz, r2, hemisphereOnly,
+        visitor);
+  }
+
+  private static void visitRange(P3[] tuples, float[] xyz, int i0, int i1,
+                                 float cx, float cy, float cz, float r2,
+                                 boolean hemisphereOnly, PointVisitor visitor) {
+    for (int i = i0, pt = i0 * 3; i < i1; i++, pt += 3) {
+      float dx = xyz[pt] - cx;
+      if (hemisphereOnly && dx < 0)
+        continue;
+      float dy = xyz[pt + 1] - cy;
+      float dz = xyz[pt + 2] - cz;
+      float d2 = dx * dx + dy * dy + dz * dz;
+      if (d2 <= r2)
+        visitor.visit(tuples[i], d2);
+    }
+  }
+
+  /**
+   * @return approximate size of the bulk-loaded index, in bytes, or 0 if the
+   *         tree was built by addTuple
+   */
+  public int getIndexMemorySize() {
+    return (kd != null ? kd.getMemorySize() : grid != null ? grid
+        .getMemorySize() : 0);
+  }
+
   /**
    * prints some simple stats to stdout
    */
@@ -125,7 +518,21 @@ public final class Bspt {
 
   public void dump() {
     SB sb = new SB();
-    eleRoot.dump(0, sb);
+    if (kd != null) {
+      sb.append("kd depth=").appendI(kd.depth).append(" count=")
+          .appendI(kd.count).append("\n");
+      for (int i = 0; i < kd.count; i++)
+        sb.append(kd.tuples[i].toString()).append("\n");
+    } else if (grid != null) {
+      sb.append("grid ").appendI(grid.nx).append("x").appendI(grid.ny)
+          .append("x").appendI(grid.nz).append(" cellSize=")
+          .appendF(grid.cellSize).append(" count=").appendI(grid.count)
+          .append("\n");
+      for (int i = 0; i < grid.count; i++)
+        sb.append(grid.tuples[i].toString()).append("\n");
+    } else {
+      eleRoot.dump(0, sb);
+    }
     Logger.info(sb.toString());
   }
 
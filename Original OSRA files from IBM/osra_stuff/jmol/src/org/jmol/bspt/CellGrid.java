@@ -0,0 +1,193 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-10-17 12:05:38 -0500 (Thu, 17 Oct 2013) $
+ *
+ * Copyright (C) 2003-2005  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.bspt;
+
+import javajs.util.P3;
+
+/**
+ *<p>
+ * A uniform grid of cubic cells (a cell list), used by Bspt in place of a
+ * tree for large sets of points that fill their bounding box more or less
+ * evenly, such as solvent boxes and crystals.
+ *</p>
+ *<p>
+ * The cell size is chosen so that there are about pointsPerCell points in
+ * each cell. The points and their coordinates are sorted by cell, with the
+ * cells numbered so that the cells along z for a given x and y are adjacent;
+ * a search then scans one contiguous range of points for each x, y column of
+ * cells that it touches. 
+ *</p>
+ *<p>
+ * As for KdIndex, the coordinates are copied when the grid is built.
+ *</p>
+ *
+ */
+final class CellGrid {
+
+  final static int pointsPerCell = 4;
+
+  /**
+   * the smallest fraction of the cells that must hold points; a sparser
+   * distribution is better served by a tree
+   */
+  final static float minOccupancy = 0.3f;
+
+  int count;
+  float x0, y0, z0;
+  float cellSize;
+  float invCellSize;
+  int nx, ny, nz;
+
+  /**
+   * the points of cell i are cellStart[i] through cellStart[i + 1] - 1
+   */
+  int[] cellStart;
+
+  /**
+   * the points, sorted by cell
+   */
+  P3[] tuples;
+
+  /**
+   * x, y, z of every point, sorted by cell
+   */
+  float[] xyz;
+
+  /**
+   * the ids given with the points, sorted by cell, or null
+   */
+  int[] ids;
+
+  /**
+   * @param points
+   * @param pointIds
+   *        ids to keep with the points, or null
+   * @param n
+   * @return a new grid, or null if the points are too unevenly distributed
+   */
+  static CellGrid newGrid(P3[] points, int[] pointIds, int n) {
+    if (n == 0)
+      return null;
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      P3 p = points[i];
+      if (p.x < minX)
+        minX = p.x;
+      if (p.x > maxX)
+        maxX = p.x;
+      if (p.y < minY)
+        minY = p.y;
+      if (p.y > maxY)
+        maxY = p.y;
+      if (p.z < minZ)
+        minZ = p.z;
+      if (p.z > maxZ)
+        maxZ = p.z;
+    }
+    // flat or linear sets still get cells at least 1 Angstrom thick
+    float ex = Math.max(maxX - minX, 1);
+    float ey = Math.max(maxY - minY, 1);
+    float ez = Math.max(maxZ - minZ, 1);
+    float cellSize = (float) Math.pow(ex * ey * ez * pointsPerCell / n,
+        1 / 3.0);
+    int nx = (int) (ex / cellSize) + 1;
+    int ny = (int) (ey / cellSize) + 1;
+    int nz = (int) (ez / cellSize) + 1;
+    long nCells = (long) nx * ny * nz;
+    if (nCells > n)
+      return null;
+    CellGrid grid = new CellGrid();
+    grid.count = n;
+    grid.x0 = minX;
+    grid.y0 = minY;
+    grid.z0 = minZ;
+    grid.cellSize = cellSize;
+    grid.invCellSize = 1 / cellSize;
+    grid.nx = nx;
+    grid.ny = ny;
+    grid.nz = nz;
+    return (grid.fill(points, pointIds, n, (int) nCells) ? grid : null);
+  }
+
+  private boolean fill(P3[] points, int[] pointIds, int n, int nCells) {
+    int[] cells = new int[n];
+    int[] start = new int[nCells + 1];
+    for (int i = 0; i < n; i++)
+      start[(cells[i] = getCell(points[i])) + 1]++;
+    int nEmpty = 0;
+    for (int i = 1; i <= nCells; i++) {
+      if (start[i] == 0)
+        nEmpty++;
+      start[i] += start[i - 1];
+    }
+    if (nCells - nEmpty < nCells * minOccupancy)
+      return false;
+    cellStart = start;
+    tuples = new P3[n];
+    xyz = new float[n * 3];
+    if (pointIds != null)
+      ids = new int[n];
+    // counting sort, keeping the original order within each cell
+    int[] next = new int[nCells];
+    System.arraycopy(start, 0, next, 0, nCells);
+    for (int i = 0; i < n; i++) {
+      P3 p = points[i];
+      int j = next[cells[i]]++;
+      tuples[j] = p;
+      if (ids != null)
+        ids[j] = pointIds[i];
+      xyz[j * 3] = p.x;
+      xyz[j * 3 + 1] = p.y;
+      xyz[j * 3 + 2] = p.z;
+    }
+    return true;
+  }
+
+  private int getCell(P3 p) {
+    return (getIndex(p.x - x0, nx) * ny + getIndex(p.y - y0, ny)) * nz
+        + getIndex(p.z - z0, nz);
+  }
+
+  /**
+   * @param d
+   *        distance from the low corner of the grid along one dimension
+   * @param n
+   *        number of cells along that dimension
+   * @return the cell index, clamped to 0 through n - 1
+   */
+  int getIndex(float d, int n) {
+    int i = (int) Math.floor(d * invCellSize);
+    return (i < 0 ? 0 : i >= n ? n - 1 : i);
+  }
+
+  /**
+   * @return approximate size of the grid, in bytes, not counting the points
+   *         themselves
+   */
+  int getMemorySize() {
+    return tuples.length * 4 + xyz.length * 4 + cellStart.length * 4
+        + (ids == null ? 0 : ids.length * 4);
+  }
+
+}
@@ -32,6 +32,10 @@ import javajs.util.P3;
  * call initialize(...) or initializeHemizphere(...)
  *<p>
  * re-initialize in order to reuse the same CubeIterator
+ *<p>
+ * A CubeIterator holds the state of one search, so it must not be shared
+ * by threads. Threads get their own from Bspf.acquireCubeIterator(...), or
+ * use Bspt.forEachWithin(...) instead.
  *
  * @author Miguel, miguel@jmol.org
  */
@@ -47,6 +51,20 @@ public class CubeIterator {
   private float cx, cy, cz;
   private float dx, dy, dz;
 
+  // used instead of stack and leaf when the tree was bulk-loaded:
+  // kdStack holds node, lo, hi of each pending node, or ix..ix1, iy..iy1
+  // is the remaining range of grid columns, and leafIndex..leafEnd is the
+  // range of points of the current leaf or column in tuples and xyz
+  private KdIndex kd;
+  private int[] kdStack;
+  private CellGrid grid;
+  private int ix, ix1, iy, iy0, iy1, iz0, iz1;
+  private P3[] tuples;
+  private float[] xyz;
+  private int leafEnd = -1;
+  // then the points of bspt.extra that were moved since the tree was built
+  private int extraIndex;
+
   // when set, only the hemisphere sphere .GE. the point
   // (on the first dim) is returned
   private boolean tHemisphere;
@@ -58,7 +76,24 @@ public class CubeIterator {
 
   void set(Bspt bspt) {
     this.bspt = bspt;
-    stack = new Element[bspt.treeDepth];
+    kd = bspt.kd;
+    grid = bspt.grid;
+    leafEnd = -1;
+    // the stacks are kept as long as they are deep enough for the tree
+    if (kd != null) {
+      if (kdStack == null || kdStack.length < (kd.depth + 1) * 3)
+        kdStack = new int[(kd.depth + 1) * 3];
+      tuples = kd.tuples;
+      xyz = kd.xyz;
+    } else if (grid != null) {
+      tuples = grid.tuples;
+      xyz = grid.xyz;
+    } else {
+      if (stack == null || stack.length < bspt.treeDepth)
+        stack = new Element[bspt.treeDepth];
+      tuples = null;
+      xyz = null;
+    }
   }
 
   /**
@@ -77,9 +112,27 @@ public class CubeIterator {
     /*centerValues[1] =*/ cy = center.y;
     /*centerValues[2] =*/ cz = center.z;
     leaf = null;
-    stack[0] = bspt.eleRoot;
-    sp = 1;
-    findLeftLeaf();
+    extraIndex = 0;
+    if (kd != null) {
+      kdStack[0] = 0;
+      kdStack[1] = 0;
+      kdStack[2] = kd.count;
+      sp = 3;
+      findLeftLeafKd();
+    } else if (grid != null) {
+      ix = grid.getIndex((hemisphereOnly ? cx : cx - radius) - grid.x0,
+          grid.nx);
+      ix1 = grid.getIndex(cx + radius - grid.x0, grid.nx);
+      iy = iy0 = grid.getIndex(cy - radius - grid.y0, grid.ny);
+      iy1 = grid.getIndex(cy + radius - grid.y0, grid.ny);
+      iz0 = grid.getIndex(cz - radius - grid.z0, grid.nz);
+      iz1 = grid.getIndex(cz + radius - grid.z0, grid.nz);
+      findNextColumn();
+    } else {
+      stack[0] = bspt.eleRoot;
+      sp = 1;
+      findLeftLeaf();
+    }
     tHemisphere = hemisphereOnly;
   }
 
@@ -87,7 +140,12 @@ public class CubeIterator {
    * nulls internal references
    */
   public void release() {
-    set(bspt);
+    leaf = null;
+    leafEnd = -1;
+    if (stack != null)
+      for (int i = stack.length; --i >= 0;)
+        stack[i] = null;
+    sp = 0;
   }
 
   /**
@@ -96,6 +154,21 @@ public class CubeIterator {
    * @return boolean
    */
   public boolean hasMoreElements() {
+    if (xyz != null) {
+      while (leafEnd >= 0) {
+        for (; leafIndex < leafEnd; ++leafIndex)
+          if (isWithinRadiusAt(leafIndex * 3))
+            return true;
+        if (kd == null)
+          findNextColumn();
+        else
+          findLeftLeafKd();
+      }
+      for (; extraIndex < bspt.extraCount; ++extraIndex)
+        if (isWithinRadius(bspt.extra[extraIndex]))
+          return true;
+      return false;
+    }
     while (leaf != null) {
       for ( ; leafIndex < leaf.count; ++leafIndex)
         if (isWithinRadius(leaf.tuples[leafIndex]))
@@ -111,7 +184,8 @@ public class CubeIterator {
    * @return Tuple
    */
   public P3 nextElement() {
-    return leaf.tuples[leafIndex++];
+    return (tuples == null ? leaf.tuples[leafIndex++]
+        : leafEnd >= 0 ? tuples[leafIndex++] : bspt.extra[extraIndex++]);
   }
 
   /**
@@ -168,6 +242,84 @@ public class CubeIterator {
     leafIndex = 0;
   }
 
+  /**
+   * does the work for a bulk-loaded tree, in the same way as findLeftLeaf
+   */
+  private void findLeftLeafKd() {
+    leafEnd = -1;
+    if (sp == 0)
+      return;
+    int node = kdStack[sp - 3];
+    int lo = kdStack[sp - 2];
+    int hi = kdStack[sp - 1];
+    sp -= 3;
+    byte[] dims = kd.dims;
+    float[] bounds = kd.bounds;
+    int dim;
+    while ((dim = dims[node]) >= 0) {
+      float minValue;
+      switch (dim) {
+      case 0:
+        minValue = cx;
+        break;
+      case 1:
+        minValue = cy;
+        break;
+      case 2:
+      default:
+        minValue = cz;
+        break;
+      }
+      float maxValue = minValue + radius;
+      if (! tHemisphere || dim != 0)
+        minValue -= radius;
+      int pt = node * 4;
+      int mid = (lo + hi) >>> 1;
+      if (minValue <= bounds[pt + 1] && maxValue >= bounds[pt]) {
+        if (maxValue >= bounds[pt + 2] && minValue <= bounds[pt + 3]) {
+          kdStack[sp++] = node * 2 + 2;
+          kdStack[sp++] = mid;
+          kdStack[sp++] = hi;
+        }
+        node = node * 2 + 1;
+        hi = mid;
+      } else if (maxValue >= bounds[pt + 2] && minValue <= bounds[pt + 3]) {
+        node = node * 2 + 2;
+        lo = mid;
+      } else {
+        if (sp == 0)
+          return;
+        node = kdStack[sp - 3];
+        lo = kdStack[sp - 2];
+        hi = kdStack[sp - 1];
+        sp -= 3;
+      }
+    }
+    leafIndex = lo;
+    leafEnd = hi;
+  }
+
+  /**
+   * for a grid, moves on to the points of the next column of cells along z
+   * that is within range
+   */
+  private void findNextColumn() {
+    leafEnd = -1;
+    while (ix <= ix1) {
+      if (iy > iy1) {
+        iy = iy0;
+        ix++;
+        continue;
+      }
+      int cell = (ix * grid.ny + iy++) * grid.nz;
+      leafIndex = grid.cellStart[cell + iz0];
+      leafEnd = grid.cellStart[cell + iz1 + 1];
+      if (leafIndex < leafEnd)
+        return;
+    }
+    leafEnd = -1;
+  }
+
   /**
    * checks one Point3f for distance
    * @param t
@@ -180,5 +332,18 @@ public class CubeIterator {
         && (dy = Math.abs(t.y - cy)) <= radius
         && (dz = Math.abs(t.z - cz)) <= radius);
   }
+
+  /**
+   * checks one point of a bulk-loaded tree or grid for distance
+   * @param pt index of x in xyz
+   * @return boolean
+   */
+  private boolean isWithinRadiusAt(int pt) {
+    dx = xyz[pt] - cx;
+    return ((!tHemisphere || dx >= 0)        
+        && (dx = Math.abs(dx)) <= radius
+        && (dy = Math.abs(xyz[pt + 1] - cy)) <= radius
+        && (dz = Math.abs(xyz[pt + 2] - cz)) <= radius);
+  }
     
 }
@@ -0,0 +1,213 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-10-17 12:05:38 -0500 (Thu, 17 Oct 2013) $
+ *
+ * Copyright (C) 2003-2005  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.bspt;
+
+import javajs.util.P3;
+
+/**
+ *<p>
+ * A bulk-loaded k-d tree stored in flat arrays, used by Bspt in place of its
+ * Node/Leaf elements when all points are known in advance.
+ *</p>
+ *<p>
+ * The points are split at the median along the dimension of the largest
+ * extent until at most leafCountMax points are left, so the tree is always
+ * balanced. The nodes are numbered as in a binary heap (children of node n
+ * are 2n+1 and 2n+2), and the range of points of each node is implied by the
+ * split, so no child references are stored. After the build, the points and
+ * their coordinates are reordered so that the points of every leaf are
+ * adjacent in memory.
+ *</p>
+ *<p>
+ * The coordinates are copied when the index is built, so it has to be rebuilt
+ * when the points move, just as the tree has to be, unless Bspt.moveTuple()
+ * is told about each moved point.
+ *</p>
+ *
+ */
+final class KdIndex {
+
+  final static int leafCountMax = 8;
+
+  /**
+   * number of points
+   */
+  int count;
+
+  /**
+   * number of node levels below the root
+   */
+  int depth;
+
+  /**
+   * the points, in leaf order
+   */
+  P3[] tuples;
+
+  /**
+   * x, y, z of every point, in leaf order
+   */
+  float[] xyz;
+
+  /**
+   * the ids given with the points, in leaf order, or null
+   */
+  int[] ids;
+
+  /**
+   * split dimension of each node, or -1 for a leaf
+   */
+  byte[] dims;
+
+  /**
+   * minLeft, maxLeft, minRight, maxRight of each node along its split
+   * dimension
+   */
+  float[] bounds;
+
+  KdIndex(P3[] points, int[] pointIds, int n) {
+    count = n;
+    for (int size = n; size > leafCountMax; size = (size + 1) >> 1)
+      depth++;
+    int nodeCount = (2 << depth) - 1;
+    dims = new byte[nodeCount];
+    bounds = new float[nodeCount * 4];
+    float[] coords = new float[n * 3];
+    int[] order = new int[n];
+    for (int i = 0, pt = 0; i < n; i++) {
+      P3 p = points[i];
+      coords[pt++] = p.x;
+      coords[pt++] = p.y;
+      coords[pt++] = p.z;
+      order[i] = i;
+    }
+    build(0, 0, n, coords, order);
+    tuples = new P3[n];
+    xyz = new float[n * 3];
+    if (pointIds != null)
+      ids = new int[n];
+    for (int i = 0, pt = 0; i < n; i++) {
+      int j = order[i];
+      tuples[i] = points[j];
+      if (ids != null)
+        ids[i] = pointIds[j];
+      xyz[pt++] = coords[j * 3];
+      xyz[pt++] = coords[j * 3 + 1];
+      xyz[pt++] = coords[j * 3 + 2];
+    }
+  }
+
+  private void build(int node, int lo, int hi, float[] coords, int[] order) {
+    if (hi - lo <= leafCountMax) {
+      dims[node] = -1;
+      return;
+    }
+    int dim = getWidestDimension(lo, hi, coords, order);
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi - 1, mid, dim, coords, order);
+    dims[node] = (byte) dim;
+    setBounds(node * 4, lo, mid, dim, coords, order);
+    setBounds(node * 4 + 2, mid, hi, dim, coords, order);
+    build(node * 2 + 1, lo, mid, coords, order);
+    build(node * 2 + 2, mid, hi, coords, order);
+  }
+
+  private static int getWidestDimension(int lo, int hi, float[] coords,
+                                        int[] order) {
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+    for (int i = lo; i < hi; i++) {
+      int pt = order[i] * 3;
+      float x = coords[pt], y = coords[pt + 1], z = coords[pt + 2];
+      if (x < minX)
+        minX = x;
+      if (x > maxX)
+        maxX = x;
+      if (y < minY)
+        minY = y;
+      if (y > maxY)
+        maxY = y;
+      if (z < minZ)
+        minZ = z;
+      if (z > maxZ)
+        maxZ = z;
+    }
+    float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+    return (dx >= dy && dx >= dz ? 0 : dy >= dz ? 1 : 2);
+  }
+
+  private void setBounds(int pt, int lo, int hi, int dim, float[] coords,
+                         int[] order) {
+    float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+    for (int i = lo; i < hi; i++) {
+      float v = coords[order[i] * 3 + dim];
+      if (v < min)
+        min = v;
+      if (v > max)
+        max = v;
+    }
+    bounds[pt] = min;
+    bounds[pt + 1] = max;
+  }
+
+  /**
+   * Hoare's selection: rearranges order[left..right] so that the k-th point
+   * is in its sorted place along dim, with no greater points before it and no
+   * smaller points after it.
+   *
+   */
+  private static void select(int left, int right, int k, int dim,
+                             float[] coords, int[] order) {
+    while (left < right) {
+      float pivot = coords[order[(left + right) >>> 1] * 3 + dim];
+      int i = left, j = right;
+      while (i <= j) {
+        while (coords[order[i] * 3 + dim] < pivot)
+          i++;
+        while (coords[order[j] * 3 + dim] > pivot)
+          j--;
+        if (i <= j) {
+          int t = order[i];
+          order[i++] = order[j];
+          order[j--] = t;
+        }
+      }
+      if (k <= j)
+        right = j;
+      else if (k >= i)
+        left = i;
+      else
+        return;
+    }
+  }
+
+  /**
+   * @return approximate size of the index, in bytes, not counting the points
+   *         themselves
+   */
+  int getMemorySize() {
+    return tuples.length * 4 + xyz.length * 4 + dims.length + bounds.length * 4
+        + (ids == null ? 0 : ids.length * 4);
+  }
+
+}
@@ -0,0 +1,43 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-10-17 12:05:38 -0500 (Thu, 17 Oct 2013) $
+ *
+ * Copyright (C) 2003-2005  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.bspt;
+
+import javajs.util.P3;
+
+/**
+ * Receives the points found by Bspt.forEachWithin().
+ *<p>
+ * Implementations that are shared by several threads must be thread-safe;
+ * typically each thread passes its own visitor.
+ */
+public interface PointVisitor {
+
+  /**
+   * @param pt
+   *        a point within the radius
+   * @param distance2
+   *        squared distance from the center
+   */
+  void visit(P3 pt, float distance2);
+
+}
@@ -0,0 +1,271 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-10-17 12:05:38 -0500 (Thu, 17 Oct 2013) $
+ *
+ * Copyright (C) 2003-2005  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.bspt;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javajs.util.P3;
+
+/**
+ * Compares a Bspt built point by point with addTuple against one built at
+ * once with load() and a grid built by loadGrid(): build time, memory, and
+ * the time to find the neighbors of every point within a bonding radius,
+ * both with a CubeIterator and with forEachWithin(). Then some points are
+ * moved, and moveTuple() is compared with a rebuild.
+ * The points are random, at the density of atoms in a protein (about one per
+ * 10 cubic Angstroms).
+ *<p>
+ * In the first round, the neighbors found for every point are checked
+ * against those of the addTuple tree, and after the moves against those of
+ * the rebuilt tree; the test throws an exception if any of them differ or if
+ * moveTuple() refuses a move.
+ *<p>
+ * usage: java org.jmol.bspt.TestBspt [atomCount [radius [repeats]]]
+ *<p>
+ * Not part of the Jmol jars (Test* classes are excluded).
+ */
+public class TestBspt {
+
+  public static void main(String[] args) {
+    int n = (args.length > 0 ? Integer.parseInt(args[0]) : 100000);
+    float radius = (args.length > 1 ? Float.parseFloat(args[1]) : 4.5f);
+    int repeats = (args.length > 2 ? Integer.parseInt(args[2]) : 5);
+    P3[] points = new P3[n];
+    float side = (float) Math.pow(n * 10.0, 1 / 3.0);
+    Random random = new Random(1);
+    for (int i = 0; i < n; i++)
+      points[i] = P3.new3(random.nextFloat() * side, random.nextFloat() * side,
+          random.nextFloat() * side);
+    System.out.println("bspt test: " + n + " points in a box of " + side
+        + " A, radius " + radius);
+    Map<P3, Integer> indexes = new IdentityHashMap<P3, Integer>();
+    for (int i = 0; i < n; i++)
+      indexes.put(points[i], Integer.valueOf(i));
+    for (int r = 0; r < repeats; r++) {
+      Map<P3, Integer> check = (r == 0 ? indexes : null);
+      int[][] reference = test("addTuple", points, radius, 0, check, null);
+      test("load", points, radius, 1, check, reference);
+      test("loadGrid", points, radius, 2, check, reference);
+    }
+    testMoves(points, radius, random, indexes);
+    System.out.println("bspt test: all neighbors found");
+  }
+
+  private static void testMoves(P3[] points, float radius, Random random,
+                                Map<P3, Integer> indexes) {
+    int n = points.length;
+    int[] ids = new int[n];
+    for (int i = 0; i < n; i++)
+      ids[i] = i;
+    Bspt bspt = new Bspt(3, 0);
+    if (!bspt.loadGrid(points, ids, n))
+      bspt.load(points, ids, n);
+    int nMoved = Bspt.extraCountMax;
+    long t = System.nanoTime();
+    for (int j = 0; j < nMoved; j++) {
+      int i = random.nextInt(n);
+      P3 p = points[i];
+      p.set(p.x + random.nextFloat() - 0.5f, p.y + random.nextFloat() - 0.5f,
+          p.z + random.nextFloat() - 0.5f);
+      if (!bspt.moveTuple(p, i))
+        throw new RuntimeException("moveTuple refused move " + j + " of "
+            + nMoved + " (point " + i + ")");
+    }
+    long tMove = System.nanoTime() - t;
+    t = System.nanoTime();
+    Bspt rebuilt = new Bspt(3, 0);
+    if (!rebuilt.loadGrid(points, ids, n))
+      rebuilt.load(points, ids, n);
+    long tBuild = System.nanoTime() - t;
+    Counter moved = new Counter();
+    Counter fresh = new Counter();
+    for (int i = 0; i < n; i++) {
+      bspt.forEachWithin(points[i], radius, false, moved);
+      rebuilt.forEachWithin(points[i], radius, false, fresh);
+    }
+    System.out.println("moveTuple: " + nMoved + " points in " + tMove / 1000
+        + " us, rebuild " + tBuild / 1000 + " us; " + moved.count + " vs "
+        + fresh.count + " pairs");
+    checkNeighbors("moveTuple",
+        getNeighbors(bspt, points, radius, false, false, indexes),
+        getNeighbors(rebuilt, points, radius, false, false, indexes));
+  }
+
+  /**
+   * @param name
+   * @param points
+   * @param radius
+   * @param mode
+   *        0 addTuple, 1 load, 2 loadGrid
+   * @param indexes
+   *        the index of each point, to check the neighbors found; or null
+   * @param reference
+   *        the neighbors to check against, or null
+   * @return the neighbors found by the CubeIterator if checked, or null
+   */
+  private static int[][] test(String name, P3[] points, float radius,
+                              int mode, Map<P3, Integer> indexes,
+                              int[][] reference) {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long memory = runtime.totalMemory() - runtime.freeMemory();
+    long t = System.nanoTime();
+    Bspt bspt = new Bspt(3, 0);
+    switch (mode) {
+    case 0:
+      for (int i = 0; i < points.length; i++)
+        bspt.addTuple(points[i]);
+      break;
+    case 1:
+      bspt.load(points, points.length);
+      break;
+    case 2:
+      if (!bspt.loadGrid(points, points.length)) {
+        System.out.println(name + ": no grid for these points");
+        return null;
+      }
+      break;
+    }
+    long tBuild = System.nanoTime() - t;
+    System.gc();
+    memory = runtime.totalMemory() - runtime.freeMemory() - memory;
+    t = System.nanoTime();
+    CubeIterator iter = bspt.allocateCubeIterator();
+    long found = 0;
+    for (int i = 0; i < points.length; i++) {
+      iter.initialize(points[i], radius, true);
+      while (iter.hasMoreElements()) {
+        iter.nextElement();
+        if (iter.foundDistance2() <= radius * radius)
+          found++;
+      }
+    }
+    long tQuery = System.nanoTime() - t;
+    System.out.println(name + ": build " + tBuild / 1000000 + " ms, "
+        + memory / 1024 + " KB; query " + tQuery / 1000000 + " ms ("
+        + (points.length * 1000000000L / Math.max(1, tQuery))
+        + " points/s), " + found + " pairs");
+    Counter counter = new Counter();
+    t = System.nanoTime();
+    for (int i = 0; i < points.length; i++)
+      bspt.forEachWithin(points[i], radius, true, counter);
+    tQuery = System.nanoTime() - t;
+    System.out.println(name + ": forEachWithin " + tQuery / 1000000 + " ms ("
+        + (points.length * 1000000000L / Math.max(1, tQuery))
+        + " points/s), " + counter.count + " pairs");
+    if (indexes == null)
+      return null;
+    int[][] neighbors = getNeighbors(bspt, points, radius, true, true, indexes);
+    if (reference != null)
+      checkNeighbors(name, neighbors, reference);
+    checkNeighbors(name + " forEachWithin",
+        getNeighbors(bspt, points, radius, true, false, indexes), neighbors);
+    return neighbors;
+  }
+
+  /**
+   * @param bspt
+   * @param points
+   * @param radius
+   * @param hemisphereOnly
+   * @param useIterator
+   *        search with a CubeIterator rather than forEachWithin()
+   * @param indexes
+   *        the index of each point
+   * @return for each point, the sorted indexes of the points within radius
+   */
+  private static int[][] getNeighbors(Bspt bspt, P3[] points, float radius,
+                                      boolean hemisphereOnly,
+                                      boolean useIterator,
+                                      Map<P3, Integer> indexes) {
+    int[][] neighbors = new int[points.length][];
+    Collector collector = new Collector(indexes, radius);
+    CubeIterator iter = (useIterator ? bspt.allocateCubeIterator() : null);
+    for (int i = 0; i < points.length; i++) {
+      if (useIterator) {
+        iter.initialize(points[i], radius, hemisphereOnly);
+        while (iter.hasMoreElements()) {
+          P3 pt = iter.nextElement();
+          collector.visit(pt, iter.foundDistance2());
+        }
+      } else {
+        bspt.forEachWithin(points[i], radius, hemisphereOnly, collector);
+      }
+      neighbors[i] = collector.getFound();
+    }
+    return neighbors;
+  }
+
+  private static void checkNeighbors(String name, int[][] found,
+                                     int[][] expected) {
+    for (int i = 0; i < expected.length; i++)
+      if (!Arrays.equals(found[i], expected[i]))
+        throw new RuntimeException(name + ": neighbors of point " + i + " "
+            + Arrays.toString(found[i]) + " expected "
+            + Arrays.toString(expected[i]));
+  }
+
+  static class Collector implements PointVisitor {
+    private Map<P3, Integer> indexes;
+    private float radius2;
+    private int[] found = new int[16];
+    private int count;
+
+    Collector(Map<P3, Integer> indexes, float radius) {
+      this.indexes = indexes;
+      radius2 = radius * radius;
+    }
+
+    @Override
+    public void visit(P3 pt, float distance2) {
+      if (distance2 > radius2)
+        return;
+      if (count == found.length)
+        found = Arrays.copyOf(found, count * 2);
+      found[count++] = indexes.get(pt).intValue();
+    }
+
+    /**
+     * @return the sorted indexes found since the last call
+     */
+    int[] getFound() {
+      int[] a = Arrays.copyOf(found, count);
+      Arrays.sort(a);
+      count = 0;
+      return a;
+    }
+  }
+
+  static class Counter implements PointVisitor {
+    long count;
+
+    @Override
+    public void visit(P3 pt, float distance2) {
+      count++;
+    }
+  }
+
+}
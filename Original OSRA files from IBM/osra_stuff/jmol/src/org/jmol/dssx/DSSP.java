@@ -24,6 +24,7 @@
 package org.jmol.dssx;
 
 import org.jmol.api.DSSPInterface;
+import org.jmol.bspt.Bspt;
 import org.jmol.constant.EnumStructure;
 import org.jmol.i18n.GT;
 import org.jmol.java.BS;
@@ -44,6 +45,7 @@ import org.jmol.viewer.Viewer;
 //import javajs.util.List;
 import javajs.util.AU;
 import javajs.util.List;
+import javajs.util.P3;
 import javajs.util.PT;
 import javajs.util.SB;
 
@@ -211,6 +213,12 @@ public class DSSP implements DSSPInterface {
   private List<Bridge> bridgesA;
   private List<Bridge> bridgesP;
 
+  /**
+   * the smallest number of residues for which the H bond energies are
+   * calculated in parallel
+   */
+  private final static int dsspParallelMin = 2000;
+
   /**
    * 
    * @param objBioPolymers
@@ -308,7 +316,7 @@ public class DSSP implements DSSPInterface {
     // Step 1: Create a polymer-based array of dual-minimum NH->O connections
     //         similar to those used in Rasmol.
 
-    int[][][][] min = getDualHydrogenBondArray();
+    int[][] min = getDualHydrogenBondArray();
 
     // NOTE: (p. 2587) "Structural overalaps are eliminated in this line by giving 
     //                  priority to H,B,E,G,I,T,S in this order." 
@@ -376,39 +384,64 @@ public class DSSP implements DSSPInterface {
    * @return array of dual-minmum NH-->O=C H bonds
    * 
    */
-  private int[][][][] getDualHydrogenBondArray() {
+  private int[][] getDualHydrogenBondArray() {
 
-    // The min[][][][] array:  min[iPolymer][i][[hb1],[hb2]]
+    // The min[][] array:  min[iPolymer][i * 6 + (0-5)] = [hb1, hb2]
     //   where i is the index of the NH end of the bond, 
     //   and [hb1] and [hb2] are [iPolymer2,i2,iEnergy]
     //   and i2 is the index of the C=O end of the bond
     //   if iEnergy is < -500 and -1 - (that number) if iEnergy is >= -500
 
-    //   This part is the same as the Rasmol hydrogen bond calculation
-    //
+    //   This part is the same as the Rasmol hydrogen bond calculation,
+    //   except that only C=O groups whose alpha carbons are close enough
+    //   to the NH alpha carbon are checked. For large models, the residues
+    //   are split into ranges that are done in parallel.
 
-    int[][][][] min = AU.newInt4(bioPolymerCount);
+    int[][] min = AU.newInt2(bioPolymerCount);
+    int nResidues = 0;
     for (int i = 0; i < bioPolymerCount; i++) {
       if (!(bioPolymers[i] instanceof AminoPolymer))
         continue;
       int n = bioPolymers[i].monomerCount;
-      min[i] = new int[n][2][3];
-      for (int j = 0; j < n; ++j) {
-        min[i][j][0][1] = min[i][j][1][1] = Integer.MIN_VALUE;
-        min[i][j][0][2] = min[i][j][1][2] = 0;
-      }
+      min[i] = new int[n * 6];
+      for (int j = 0, pt = 0; j < n; ++j, pt += 6)
+        min[i][pt + 1] = min[i][pt + 4] = Integer.MIN_VALUE;
+      nResidues += n;
     }
-
+    P3[] alphaCarbons = new P3[nResidues];
+    nResidues = 0;
     for (int i = 0; i < bioPolymerCount; i++)
       if (min[i] != null)
-        for (int j = 0; j < bioPolymerCount; j++)
-          if (min[j] != null)
-            bioPolymers[i].calcRasmolHydrogenBonds(bioPolymers[j], null, null,
-                null, 2, min[i], false, dsspIgnoreHydrogens);
-
+        for (int j = 0, n = bioPolymers[i].monomerCount; j < n; j++)
+          alphaCarbons[nResidues++] = bioPolymers[i].monomers[j].getLeadAtom();
+    final Bspt bspt = new Bspt(3, 0);
+    bspt.build(alphaCarbons, null, nResidues, true);
+
+    Viewer viewer = bioPolymers[0].model.getModelSet().viewer;
+    int chunk = (Viewer.nProcessors > 1 && nResidues >= dsspParallelMin ? Math
+        .max(dsspParallelMin / 4, nResidues / (Viewer.nProcessors * 4))
+        : Integer.MAX_VALUE);
+    List<Runnable> tasks = new List<Runnable>();
+    for (int i = 0; i < bioPolymerCount; i++)
+      if (min[i] != null)
+        for (int j = 0, n = bioPolymers[i].monomerCount; j < n; j += chunk)
+          tasks.addLast(newHydrogenBondTask((AminoPolymer) bioPolymers[i], bspt,
+              j, (int) Math.min((long) j + chunk, n), min[i]));
+    viewer.runParallel(tasks.toArray(new Runnable[tasks.size()]));
     return min;
   }
 
+  private Runnable newHydrogenBondTask(final AminoPolymer ap, final Bspt bspt,
+                                       final int i0, final int i1,
+                                       final int[] min) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        ap.calcDsspHydrogenBonds(bspt, i0, i1, min, dsspIgnoreHydrogens);
+      }
+    };
+  }
+
   /**
    * (p. 2581):
    * 
@@ -426,44 +459,52 @@ public class DSSP implements DSSPInterface {
    * 
    * @param min
    */
-  private void getBridges(int[][][][] min) {
+  private void getBridges(int[][] min) {
     // ooooooh! It IS possible to have 3 bridges to the same residue. (3A5F) 
     // 
     Atom[] atoms = bioPolymers[0].model.getModelSet().atoms;
     Bridge bridge = null;
 
     Map<String, Boolean> htTemp = new Hashtable<String, Boolean>();
+    long[] partners = new long[8];
     for (int p1 = 0; p1 < min.length; p1++)
       if (bioPolymers[p1] instanceof AminoPolymer) {
         AminoPolymer ap1 = ((AminoPolymer) bioPolymers[p1]);
-        int n = min[p1].length - 1;
+        int n = min[p1].length / 6 - 1;
         for (int a = 1; a < n; a++) {
           int ia = ap1.monomers[a].leadAtomIndex;
           if (bsBad.get(ia))
             continue;
-          for (int p2 = p1; p2 < min.length; p2++)
-            if (bioPolymers[p2] instanceof AminoPolymer)
-              for (int b = (p1 == p2 ? a + 3 : 1); b < min[p2].length - 1; b++) {
-                AminoPolymer ap2 = (AminoPolymer) bioPolymers[p2];
-                int ib = ap2.monomers[b].leadAtomIndex;
-                if (bsBad.get(ib))
-                  continue;
-                if ((bridge = getBridge(min, p1, a, p2, b, bridgesP, atoms[ia],
-                    atoms[ib], ap1, ap2, htTemp, false)) != null) {
-                } else if ((bridge = getBridge(min, p1, a, p2, b, bridgesA,
-                    atoms[ia], atoms[ib], ap1, ap2, htTemp, true)) != null) {
-                  bridge.isAntiparallel = true;
-                } else {
-                  continue;
-                }
-                if (Logger.debugging)
-                  Logger.debug("Bridge found " + bridge);
-                //setDone(bsDone1, bsDone2, ia);
-                //setDone(bsDone1, bsDone2, ib);
-                done[p1].set(a);
-                done[p2].set(b);
-                htBridges.put(ia + "-" + ib, bridge);
-              }
+          // Every bridge needs an H bond from NH(a) or NH(a+1), so only the
+          // residues next to their C=O ends have to be checked, in the order
+          // in which a scan over all p2 > p1, b > a would find them.
+          int nPartners = getBridgePartners(min[p1], a, partners);
+          for (int k = 0; k < nPartners; k++) {
+            int p2 = (int) (partners[k] >> 32);
+            int b = (int) partners[k];
+            if (p2 < p1 || min[p2] == null || b < (p1 == p2 ? a + 3 : 1)
+                || b >= min[p2].length / 6 - 1)
+              continue;
+            AminoPolymer ap2 = (AminoPolymer) bioPolymers[p2];
+            int ib = ap2.monomers[b].leadAtomIndex;
+            if (bsBad.get(ib))
+              continue;
+            if ((bridge = getBridge(min, p1, a, p2, b, bridgesP, atoms[ia],
+                atoms[ib], ap1, ap2, htTemp, false)) != null) {
+            } else if ((bridge = getBridge(min, p1, a, p2, b, bridgesA,
+                atoms[ia], atoms[ib], ap1, ap2, htTemp, true)) != null) {
+              bridge.isAntiparallel = true;
+            } else {
+              continue;
+            }
+            if (Logger.debugging)
+              Logger.debug("Bridge found " + bridge);
+            //setDone(bsDone1, bsDone2, ia);
+            //setDone(bsDone1, bsDone2, ib);
+            done[p1].set(a);
+            done[p2].set(b);
+            htBridges.put(ia + "-" + ib, bridge);
+          }
         }
       }
   }
@@ -471,28 +512,28 @@ public class DSSP implements DSSPInterface {
   private int[][] sheetOffsets = { new int[] { 0, -1, 1, 0, 1, 0, 0, -1 },
       new int[] { 0, 0, 0, 0, 1, -1, 1, -1 } };
 
-  private Bridge getBridge(int[][][][] min, int p1, int a, int p2, int b,
+  private Bridge getBridge(int[][] min, int p1, int a, int p2, int b,
                              List<Bridge> bridges, Atom atom1, Atom atom2,
                              AminoPolymer ap1, AminoPolymer ap2,
                              Map<String, Boolean> htTemp,
                              boolean isAntiparallel) {
 
-    int[] b1 = null, b2 = null;
+    int b1 = -1, b2 = -1;
     int ipt = 0;
     int[] offsets = (isAntiparallel ? sheetOffsets[1] : sheetOffsets[0]);
-    if ((b1 = isHbonded(a + offsets[0], b + offsets[1], p1, p2, min)) != null
-        && (b2 = isHbonded(b + offsets[2], a + offsets[3], p2, p1, min)) != null
-        || (b1 = isHbonded(a + offsets[ipt = 4], b + offsets[5], p1, p2, min)) != null
-        && (b2 = isHbonded(b + offsets[6], a + offsets[7], p2, p1, min)) != null) {
+    if ((b1 = isHbonded(a + offsets[0], b + offsets[1], p1, p2, min)) >= 0
+        && (b2 = isHbonded(b + offsets[2], a + offsets[3], p2, p1, min)) >= 0
+        || (b1 = isHbonded(a + offsets[ipt = 4], b + offsets[5], p1, p2, min)) >= 0
+        && (b2 = isHbonded(b + offsets[6], a + offsets[7], p2, p1, min)) >= 0) {
       Bridge bridge = new Bridge(atom1, atom2, htLadders);
       bridges.addLast(bridge);
       if (vHBonds != null) {
         int type = (isAntiparallel ? JmolEdge.BOND_H_MINUS_3
             : JmolEdge.BOND_H_PLUS_2);
         addHbond(ap1.monomers[a + offsets[ipt]], ap2.monomers[b
-            + offsets[++ipt]], b1[2], type, htTemp);
+            + offsets[++ipt]], min[p1][b1 + 2], type, htTemp);
         addHbond(ap2.monomers[b + offsets[++ipt]], ap1.monomers[a
-            + offsets[++ipt]], b2[2], type, htTemp);
+            + offsets[++ipt]], min[p2][b2 + 2], type, htTemp);
       }
       return bridge;
     }
@@ -693,19 +734,54 @@ public class DSSP implements DSSPInterface {
     return sb.toString().replace('\0', '.');
   }
 
-  private int[] isHbonded(int indexDonor, int indexAcceptor, int pDonor,
-                          int pAcceptor, int[][][][] min) {
+  /**
+   * @return the position in min[pDonor] of the H bond from NH(indexDonor) to
+   *         C=O(indexAcceptor), or -1
+   */
+  private int isHbonded(int indexDonor, int indexAcceptor, int pDonor,
+                        int pAcceptor, int[][] min) {
     if (indexDonor < 0 || indexAcceptor < 0)
-      return null;
-    int[][][] min1 = min[pDonor];
-    int[][][] min2 = min[pAcceptor];
-    if (indexDonor >= min1.length || indexAcceptor >= min2.length)
-      return null;
-    return (min1[indexDonor][0][0] == pAcceptor
-        && min1[indexDonor][0][1] == indexAcceptor ? min1[indexDonor][0]
-        : min1[indexDonor][1][0] == pAcceptor
-            && min1[indexDonor][1][1] == indexAcceptor ? min1[indexDonor][1]
-            : null);
+      return -1;
+    int[] min1 = min[pDonor];
+    int[] min2 = min[pAcceptor];
+    if (indexDonor * 6 >= min1.length || indexAcceptor * 6 >= min2.length)
+      return -1;
+    int pt = indexDonor * 6;
+    return (min1[pt] == pAcceptor && min1[pt + 1] == indexAcceptor ? pt
+        : min1[pt + 3] == pAcceptor && min1[pt + 4] == indexAcceptor ? pt + 3
+            : -1);
+  }
+
+  /**
+   * Lists the possible bridge partners of residue a: the C=O ends of the H
+   * bonds from NH(a) and NH(a+1), and the residues after them, sorted by
+   * polymer and residue and without duplicates.
+   * 
+   * @param min1
+   * @param a
+   * @param partners
+   *        filled with (iPolymer << 32 | i)
+   * @return number of partners
+   */
+  private static int getBridgePartners(int[] min1, int a, long[] partners) {
+    int n = 0;
+    for (int pt = a * 6, end = pt + 12; pt < end && pt < min1.length; pt += 3) {
+      int i = min1[pt + 1];
+      if (i < 0)
+        continue;
+      for (int b = i; b <= i + 1; b++) {
+        long partner = ((long) min1[pt] << 32) | b;
+        int j = n;
+        while (j > 0 && partners[j - 1] > partner)
+          j--;
+        if (j > 0 && partners[j - 1] == partner)
+          continue;
+        for (int k = n++; k > j; k--)
+          partners[k] = partners[k - 1];
+        partners[j] = partner;
+      }
+    }
+    return n;
   }
 
 /**
@@ -730,12 +806,12 @@ public class DSSP implements DSSPInterface {
    * @param iPolymer
    * @return             string label
    */
-  private String findHelixes(int iPolymer, int[][][] min) {
+  private String findHelixes(int iPolymer, int[] min) {
     AminoPolymer ap = (AminoPolymer) bioPolymers[iPolymer];
     if (Logger.debugging)
       for (int j = 0; j < ap.monomerCount; j++)
         Logger.debug(iPolymer + "." + ap.monomers[j].getResno() + "\t"
-            + Escape.e(min[j]));
+            + Escape.eAI(AU.arrayCopyRangeI(min, j * 6, j * 6 + 6)));
 
     BS bsTurn = new BS();
 
@@ -760,7 +836,7 @@ public class DSSP implements DSSPInterface {
     return "";
   }
 
-  private String findHelixes2(int iPolymer, int pitch, int[][][] min,
+  private String findHelixes2(int iPolymer, int pitch, int[] min,
                               EnumStructure subtype, int type,
                               BS bsTurn) {
 
@@ -783,9 +859,9 @@ public class DSSP implements DSSPInterface {
     int n = ap.monomerCount;
     for (int i = pitch; i < n; ++i) {
       int i0 = i - pitch;
-      int bpt = 0;
-      if (min[i][0][0] == iPolymer && min[i][0][1] == i0
-          || min[i][bpt = 1][0] == iPolymer && min[i][1][1] == i0) {
+      int bpt = i * 6;
+      if (min[bpt] == iPolymer && min[bpt + 1] == i0
+          || min[bpt += 3] == iPolymer && min[bpt + 1] == i0) {
 
         // the basic indicators are >33< or >444< or >5555<
 
@@ -830,7 +906,7 @@ public class DSSP implements DSSPInterface {
         if (bsStop.get(i0))
           bsX.set(i0);
         if (addH && vHBonds != null) {
-          addHbond(m, ap.monomers[i0], min[i][bpt][2], type, null);
+          addHbond(m, ap.monomers[i0], min[bpt + 2], type, null);
         }
       }
     }
@@ -0,0 +1,140 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-11-27 10:42:18 -0600 (Wed, 27 Nov 2013) $
+ * $Revision: 19034 $
+ *
+ * Copyright (C) 2003-2005  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.g3d;
+
+import javajs.util.List;
+
+/**
+ *<p>
+ * A pool of the int[] pixel and z buffers of Platform3D, shared by all
+ * Graphics3D instances.
+ *</p>
+ *<p>
+ * Buffers are pooled by their exact length, so that resizing the window back
+ * and forth, or writing images at a few alternating sizes, reuses the same
+ * arrays rather than allocating new ones each time and leaving the old ones
+ * to the garbage collector. A buffer taken from the pool is not cleared;
+ * Graphics3D clears its buffers before rendering anyway.
+ *</p>
+ *<p>
+ * Only the buffers of the lengthCountMax lengths released most recently are
+ * kept: dragging the edge of a window releases buffers at dozens of sizes
+ * that never come back, and those are dropped to the garbage collector as
+ * soon as newer sizes replace them. At most intCountMax ints are kept in any
+ * case, dropping the buffers released longest ago first. The pool is emptied
+ * when the last Platform3D is destroyed.
+ *</p>
+ *
+ */
+final class BufferPool {
+
+  /**
+   * 128 MB, enough for the four buffers of two antialiased 1000x1000 images
+   */
+  private final static int intCountMax = 1 << 25;
+
+  /**
+   * the number of distinct buffer lengths kept: enough for the display and
+   * an image written at another size, also with antialiasing, where the
+   * translucent buffers may be smaller than the others
+   */
+  private final static int lengthCountMax = 4;
+
+  /**
+   * released buffers, oldest first
+   */
+  private final static List<int[]> buffers = new List<int[]>();
+
+  /**
+   * the lengths of the buffers in the pool, least recently released first
+   */
+  private final static List<Integer> lengths = new List<Integer>();
+  private static int intCount;
+  private static int platformCount;
+
+  static synchronized void addPlatform() {
+    platformCount++;
+  }
+
+  static synchronized void removePlatform() {
+    if (--platformCount > 0)
+      return;
+    platformCount = 0;
+    buffers.clear();
+    lengths.clear();
+    intCount = 0;
+  }
+
+  /**
+   * @param size
+   * @return a released buffer of exactly this length, or a new one
+   */
+  static synchronized int[] getBuffer(int size) {
+    for (int i = buffers.size(); --i >= 0;) {
+      int[] buffer = buffers.get(i);
+      if (buffer.length == size) {
+        removeBuffer(i);
+        return buffer;
+      }
+    }
+    return new int[size];
+  }
+
+  /**
+   * @param buffer
+   *        no longer used by its Platform3D; may be null
+   */
+  static synchronized void releaseBuffer(int[] buffer) {
+    if (buffer == null || platformCount == 0 || buffer.length > intCountMax)
+      return;
+    for (int i = buffers.size(); --i >= 0;)
+      if (buffers.get(i) == buffer)
+        return;
+    Integer length = Integer.valueOf(buffer.length);
+    lengths.removeObj(length);
+    lengths.addLast(length);
+    if (lengths.size() > lengthCountMax)
+      removeLength(lengths.remove(0).intValue());
+    buffers.addLast(buffer);
+    intCount += buffer.length;
+    while (intCount > intCountMax)
+      removeBuffer(0);
+  }
+
+  private static void removeLength(int length) {
+    for (int i = buffers.size(); --i >= 0;)
+      if (buffers.get(i).length == length)
+        removeBuffer(i);
+  }
+
+  private static void removeBuffer(int i) {
+    int length = buffers.remove(i).length;
+    intCount -= length;
+    for (int j = buffers.size(); --j >= 0;)
+      if (buffers.get(j).length == length)
+        return;
+    lengths.removeObj(Integer.valueOf(length));
+  }
+
+}
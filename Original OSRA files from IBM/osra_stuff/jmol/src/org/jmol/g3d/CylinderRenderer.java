@@ -102,7 +102,9 @@ class CylinderRenderer {
           clipped);
       return;
     }
-    drawBackside = (clipped 
+    drawBackside = (clipped
+        && g3d.isScreenClipped(codeMinA | codeMaxA | codeMinB | codeMaxB,
+            Math.min(yA, yB) - r, Math.max(yA, yB) + r)
         || endcaps == GData.ENDCAPS_FLAT || endcaps == GData.ENDCAPS_NONE);
     this.diameter = diameter;
     this.xA = xA;
@@ -166,7 +168,9 @@ class CylinderRenderer {
       this.yAf = yA;
       this.zAf = zA;
     }
-    drawBackside = (!isScreenedA && !isScreenedB && (clipped 
+    drawBackside = (!isScreenedA && !isScreenedB && (clipped
+        && g3d.isScreenClipped(codeMinA | codeMaxA | codeMinB | codeMaxB,
+            Math.min(iyA, iyB) - r, Math.max(iyA, iyB) + r)
         || endcaps == GData.ENDCAPS_FLAT || endcaps == GData.ENDCAPS_NONE));
     this.xA = (int) xAf;
     this.yA = (int) yAf;
@@ -162,11 +162,11 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
 
   Platform3D platform;
   LineRenderer line3d;
-  private SphereRenderer sphere3d;
-  private CylinderRenderer cylinder3d;
+  SphereRenderer sphere3d;
+  CylinderRenderer cylinder3d;
   
   // loaded only if needed
-  private G3DRenderer triangle3d;
+  G3DRenderer triangle3d;
   private G3DRenderer circle3d;
   private G3DRenderer hermite3d;
   
@@ -175,6 +175,22 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
 
   private TextString[] strings = null;
   private int stringCount;
+
+  /**
+   * collects the opaque spheres, cylinders and triangles to be rendered in
+   * bands, in parallel, or null
+   */
+  private TileRenderer tiles;
+
+  /**
+   * the Graphics3D this one renders a band of, or null
+   */
+  private Graphics3D bandOwner;
+
+  /**
+   * the row of bandOwner that is row 0 here
+   */
+  private int bandY0;
   
   @Override
   public void clear() {
@@ -186,6 +202,7 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   @Override
   public void destroy() {
     releaseBuffers();
+    platform.destroy();
     platform = null;
     graphicsForMetrics = null;
   }
@@ -211,6 +228,14 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   protected int[] zbuf;
   protected int[] zbufT;
   protected int translucencyMask;
+
+  /**
+   * the range of offsets written in pbufT and zbufT since they were last
+   * cleared; only these are merged into pbuf and cleared for the next frame,
+   * so that a small translucent overlay such as a hover label does not cost
+   * two passes over the whole screen
+   */
+  int dirtyMinT = Integer.MAX_VALUE, dirtyMaxT = -1;
   private boolean renderLow;
 
   //int clipX;
@@ -275,6 +300,242 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
     return ((G3DRenderer) Interface.getOptionInterface("g3d." + type + "Renderer")).set(this);
   }
 
+  /**
+   * Turns tiled rendering of the opaque pass on or off, starting with the
+   * next frame.
+   * 
+   * @param viewer
+   *        the viewer whose threads render the bands, or null for off
+   */
+  @Override
+  public void setTiledRendering(Viewer viewer) {
+    if (currentlyRendering)
+      endRendering();
+    if (viewer == null)
+      tiles = null;
+    else if (tiles == null)
+      tiles = new TileRenderer(this, viewer);
+  }
+
+  private void flushTiles() {
+    if (tiles != null)
+      tiles.flush();
+  }
+
+  @Override
+  public int[] getZBuffer() {
+    flushTiles();
+    return zbuf;
+  }
+
+  /**
+   * the opaque pass as drawn up to some shape, for RepaintManager
+   */
+  private static class RetainedImage {
+    int[] pbuf, zbuf;
+    TextString[] strings;
+    int width, height;
+    boolean haveTranslucentObjects;
+  }
+
+  @Override
+  public Object getRetainedImage(Object image) {
+    flushTiles();
+    if (!currentlyRendering || isPass2 || pbuf == null)
+      return null;
+    RetainedImage r = (image instanceof RetainedImage ? (RetainedImage) image
+        : new RetainedImage());
+    r.pbuf = copyBuffer(pbuf, r.pbuf);
+    r.zbuf = copyBuffer(zbuf, r.zbuf);
+    if (r.strings == null || r.strings.length != stringCount)
+      r.strings = new TextString[stringCount];
+    if (stringCount > 0)
+      System.arraycopy(strings, 0, r.strings, 0, stringCount);
+    r.width = width;
+    r.height = height;
+    r.haveTranslucentObjects = haveTranslucentObjects;
+    return r;
+  }
+
+  /**
+   * @param buffer
+   * @param copy
+   *        a previous copy, reused if it is the same size, otherwise returned
+   *        to the BufferPool
+   * @return the copy
+   */
+  private static int[] copyBuffer(int[] buffer, int[] copy) {
+    if (copy == null || copy.length != buffer.length) {
+      BufferPool.releaseBuffer(copy);
+      copy = BufferPool.getBuffer(buffer.length);
+    }
+    System.arraycopy(buffer, 0, copy, 0, buffer.length);
+    return copy;
+  }
+
+  @Override
+  public boolean setRetainedImage(Object image) {
+    if (!(image instanceof RetainedImage) || !currentlyRendering || isPass2
+        || pbuf == null)
+      return false;
+    RetainedImage r = (RetainedImage) image;
+    if (r.width != width || r.height != height || r.pbuf.length != pbuf.length)
+      return false;
+    flushTiles();
+    System.arraycopy(r.pbuf, 0, pbuf, 0, pbuf.length);
+    System.arraycopy(r.zbuf, 0, zbuf, 0, zbuf.length);
+    stringCount = r.strings.length;
+    strings = null;
+    if (stringCount > 0) {
+      strings = new TextString[stringCount];
+      System.arraycopy(r.strings, 0, strings, 0, stringCount);
+    }
+    if (r.haveTranslucentObjects)
+      haveTranslucentObjects = true;
+    return true;
+  }
+
+  /**
+   * @param colixA
+   * @param colixB
+   * @return true if the primitive about to be drawn in colixCurrent, colixA
+   *         and colixB is to be left to the TileRenderer; the shades of the
+   *         last available colix may change before it is rendered
+   */
+  private boolean isTiled(short colixA, short colixB) {
+    return (tiles != null && !isPass2
+        && !C.isColixLastAvailable(colixCurrent)
+        && !C.isColixLastAvailable(colixA) && !C.isColixLastAvailable(colixB));
+  }
+
+  final static int bandStateLength = 8;
+
+  /**
+   * Saves the color state for a primitive that will be rendered later by a
+   * band; see TileRenderer.
+   * 
+   * @param buf
+   * @param pt
+   * @return pt + bandStateLength
+   */
+  int saveBandState(int[] buf, int pt) {
+    getShades(colixCurrent);
+    buf[pt++] = colixCurrent;
+    buf[pt++] = (addAllPixels ? 1 : 0);
+    buf[pt++] = argbCurrent;
+    buf[pt++] = argbNoisyUp;
+    buf[pt++] = argbNoisyDn;
+    buf[pt++] = currentShadeIndex;
+    buf[pt++] = slab;
+    buf[pt++] = depth;
+    return pt;
+  }
+
+  int restoreBandState(int[] buf, int pt) {
+    colixCurrent = (short) buf[pt++];
+    shadesCurrent = getShades(colixCurrent);
+    addAllPixels = (buf[pt++] != 0);
+    argbCurrent = buf[pt++];
+    argbNoisyUp = buf[pt++];
+    argbNoisyDn = buf[pt++];
+    currentShadeIndex = buf[pt++];
+    slab = buf[pt++];
+    depth = buf[pt++];
+    return pt;
+  }
+
+  /**
+   * Makes this Graphics3D one that renders bands of g.
+   * 
+   * @param g
+   */
+  void initializeBand(Graphics3D g) {
+    bandOwner = g;
+    shader = g.shader;
+    line3d = new LineRenderer(this);
+    sphere3d = new SphereRenderer(this);
+    cylinder3d = new CylinderRenderer(this);
+    triangle3d = getRenderer("Triangle");
+    twoPass = true;
+  }
+
+  /**
+   * Sets this band Graphics3D to render rows y0 through y0 + h - 1 of g,
+   * copying them into buffers of its own.
+   * 
+   * @param g
+   * @param y0
+   * @param h
+   */
+  void setBand(Graphics3D g, int y0, int h) {
+    bandY0 = y0;
+    width = g.width;
+    height = h;
+    xLast = width - 1;
+    yLast = h - 1;
+    bufferSize = width * h;
+    zSlab = g.zSlab;
+    zDepth = g.zDepth;
+    zShadePower = g.zShadePower;
+    zShadeR = g.zShadeR;
+    zShadeG = g.zShadeG;
+    zShadeB = g.zShadeB;
+    bgcolor = g.bgcolor;
+    inGreyscaleMode = g.inGreyscaleMode;
+    changeableColixMap = g.changeableColixMap;
+    antialiasThisFrame = g.antialiasThisFrame;
+    renderLow = g.renderLow;
+    translucentCoverOnly = g.translucentCoverOnly;
+    isPass2 = false;
+    boolean isShaded = (g.pixel instanceof PixelatorShaded);
+    if (pixel == null || isShaded != (pixel instanceof PixelatorShaded))
+      pixel = (isShaded ? new PixelatorShaded(this) : new Pixelator(this));
+    if (pbuf == null || pbuf.length < bufferSize) {
+      pbuf = new int[bufferSize];
+      zbuf = new int[bufferSize];
+    }
+    System.arraycopy(g.pbuf, y0 * width, pbuf, 0, bufferSize);
+    System.arraycopy(g.zbuf, y0 * width, zbuf, 0, bufferSize);
+  }
+
+  /**
+   * Copies h rows of this band, starting at row y, back to row y0 of g.
+   * 
+   * @param g
+   * @param y
+   * @param y0
+   * @param h
+   */
+  void copyBand(Graphics3D g, int y, int y0, int h) {
+    System.arraycopy(pbuf, y * width, g.pbuf, y0 * width, h * width);
+    System.arraycopy(zbuf, y * width, g.zbuf, y0 * width, h * width);
+  }
+
+  /**
+   * @param code
+   *        the combined clip codes of a shape
+   * @param yMin
+   *        its top row
+   * @param yMax
+   *        its bottom row
+   * @return false if the shape is not clipped at all or only by the edges of
+   *         this band, not by the screen
+   */
+  boolean isScreenClipped(int code, int yMin, int yMax) {
+    if (bandOwner == null || (code & ~(yLT | yGT)) != 0)
+      return (code != 0);
+    return (yMin + bandY0 < 0 || yMax + bandY0 >= bandOwner.height);
+  }
+
+  /**
+   * the height of the screen, even for a band, as the renderers use it to
+   * skip shapes too large to be drawn
+   */
+  @Override
+  public int getRenderHeight() {
+    return (bandOwner == null ? height : bandOwner.height);
+  }
+
   @Override
   public boolean currentlyRendering() {
     return currentlyRendering;
@@ -327,6 +588,8 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
       aobuf = null;
     }
     setWidthHeight(antialiasThisFrame);
+    if (tiles != null)
+      tiles.begin();
     platform.clearBuffer();
     if (backgroundImage != null)
       plotImage(Integer.MIN_VALUE, 0, Integer.MIN_VALUE, backgroundImage, null, (short) 0, 0, 0);
@@ -350,6 +613,7 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   
   @Override
   public boolean setPass2(boolean antialiasTranslucent) {
+    flushTiles();
     if (!haveTranslucentObjects || !currentlyRendering)
       return false;
     isPass2 = true;
@@ -359,11 +623,15 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
       platform.allocateTBuffers(antialiasTranslucent);
       pbufT = platform.pBufferT;
       zbufT = platform.zBufferT;
-    }    
+      platform.clearTBuffer();
+    } else if (dirtyMinT <= dirtyMaxT) {
+      platform.clearTBufferRange(dirtyMinT, dirtyMaxT + 1);
+    }
+    dirtyMinT = Integer.MAX_VALUE;
+    dirtyMaxT = -1;
     antialias2 = antialiasTranslucent;
     if (antialiasThisFrame && !antialias2)
       downsampleFullSceneAntialiasing(true);
-    platform.clearTBuffer();
     return true;
   }
   
@@ -372,9 +640,10 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   public void endRendering() {
     if (!currentlyRendering)
       return;
+    flushTiles();
     if (pbuf != null) {
       if (isPass2 && pbufT != null)
-        for (int offset = pbufT.length; --offset >= 0;)
+        for (int offset = dirtyMaxT + 1; --offset >= dirtyMinT;)
           mergeBufferPixel(pbuf, offset, pbufT[offset], bgcolor);
       if (ambientOcclusion != 0) {
         if (aobuf == null)
@@ -543,11 +812,13 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   }
   
   public void setTempZSlab(int zSlab) {
+    flushTiles();
     this.zSlab = zSlab;
   }
   
   @Override
   public void setZShade(boolean zShade, int zSlab, int zDepth, int zShadePower) {
+    flushTiles();
     if (zShade) {
       setZShade2(zSlab, zDepth, zShadePower);
       pixel = new PixelatorShaded(this);
@@ -750,8 +1021,12 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
     case 0:
       return;
     }
-    if (diameter <= (antialiasThisFrame ? SphereRenderer.maxSphereDiameter2
+    if (diameter > (antialiasThisFrame ? SphereRenderer.maxSphereDiameter2
         : SphereRenderer.maxSphereDiameter))
+      return;
+    if (isTiled(colixCurrent, colixCurrent))
+      tiles.addSphere(diameter, x, y, z);
+    else
       sphere3d.render(shadesCurrent, !addAllPixels, diameter, x, y, z, null,
           null, null, -1, null, addAllPixels);
   }
@@ -760,6 +1035,8 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
 
   @Override
   public void volumeRender(boolean TF) {
+    // the lighting changes
+    flushTiles();
     if (TF) {
       saveAmbient = shader.ambientPercent;
       saveDiffuse = shader.diffusePercent;
@@ -806,6 +1083,8 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
     case 0:
       return;
     }
+    // clears pixels drawn before
+    flushTiles();
     if (diameter <= (antialiasThisFrame ? SphereRenderer.maxSphereDiameter2
         : SphereRenderer.maxSphereDiameter))
       sphere3d.render(shadesCurrent, !addAllPixels, diameter, x, y, z,
@@ -1020,6 +1299,8 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   @Override
   public void plotText(int x, int y, int z, int argb,
                 int bgargb, String text, Font font3d, JmolRendererInterface jmolRenderer) {
+    // blends with pixels drawn before
+    flushTiles();
     TextRenderer.plot(x, y, z, argb, bgargb, text, font3d, this, 
         jmolRenderer, antialiasThisFrame);    
   }
@@ -1034,6 +1315,8 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
 
   public void plotImage(int x, int y, int z, Object image, JmolRendererInterface jmolRenderer,
                         short bgcolix, int width, int height) {
+    // blends with pixels drawn before
+    flushTiles();
     setColix(bgcolix);
     if (!isPass2)
       translucencyMask = -1;
@@ -1178,8 +1461,20 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
       colixB = 0;
     if (colixA == 0 && colixB == 0)
       return;
-    cylinder3d.render(colixA, colixB, isScreenedA, !addAllPixels, endcaps, diameter,
-                      xA, yA, zA, xB, yB, zB);
+    renderCylinder(colixA, colixB, isScreenedA, !addAllPixels, endcaps,
+        diameter, xA, yA, zA, xB, yB, zB);
+  }
+
+  private void renderCylinder(short colixA, short colixB,
+                              boolean isScreenedA, boolean isScreenedB,
+                              byte endcaps, int diameter, int xA, int yA,
+                              int zA, int xB, int yB, int zB) {
+    if (isTiled(colixA, colixB))
+      tiles.addCylinder(colixA, colixB, isScreenedA, isScreenedB, endcaps,
+          diameter, xA, yA, zA, xB, yB, zB);
+    else
+      cylinder3d.render(colixA, colixB, isScreenedA, isScreenedB, endcaps,
+          diameter, xA, yA, zA, xB, yB, zB);
   }
 
   @Override
@@ -1187,7 +1482,7 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
                            int diameter,
                            int xA, int yA, int zA, int xB, int yB, int zB) {
     //measures, vectors, polyhedra
-    cylinder3d.render(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
+    renderCylinder(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
                       xA, yA, zA, xB, yB, zB);
   }
 
@@ -1195,7 +1490,7 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   public void fillCylinderScreen3I(byte endcaps, int diameter,
                            P3i screenA, P3i screenB, P3 pt0f, P3 pt1f, float radius) {
     //draw
-    cylinder3d.render(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
+    renderCylinder(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
                       screenA.x, screenA.y, screenA.z,
                       screenB.x, screenB.y, screenB.z);
   }
@@ -1204,7 +1499,7 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   public void fillCylinder(byte endcaps, int diameter,
                            P3i screenA, P3i screenB) {
     //axes, bbcage, uccage, cartoon, dipoles, mesh
-    cylinder3d.render(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
+    renderCylinder(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
                       screenA.x, screenA.y, screenA.z,
                       screenB.x, screenB.y, screenB.z);
   }
@@ -1213,7 +1508,12 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
   public void fillCylinderBits(byte endcaps, int diameter,
                                P3 screenA, P3 screenB) {
    // dipole cross, cartoonRockets, draw line
-   cylinder3d.renderBits(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
+   if (isTiled(colixCurrent, colixCurrent))
+     tiles.addCylinderBits(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
+       screenA.x, screenA.y, screenA.z,
+       screenB.x, screenB.y, screenB.z);
+   else
+     cylinder3d.renderBits(colixCurrent, colixCurrent, !addAllPixels, !addAllPixels, endcaps, diameter,
        screenA.x, screenA.y, screenA.z,
        screenB.x, screenB.y, screenB.z);
  }
@@ -1378,6 +1678,7 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
                            P3i screenC, short colixC, short normixC) {
     // mesh, isosurface
     boolean useGouraud;
+    int rgbA = 0, rgbB = 0, rgbC = 0;
     if (!isPass2 && normixA == normixB && normixA == normixC &&
         colixA == colixB && colixA == colixC) {
       setTriangleColixAndShadeIndex(colixA, getShadeIndex(normixA));
@@ -1385,11 +1686,17 @@ final public class Graphics3D extends GData implements JmolRendererInterface {
     } else {
       if (!setTriangleTranslucency(colixA, colixB, colixC))
         return;
-      ((TriangleRenderer) triangle3d).setGouraud(getShades(colixA)[getShadeIndex(normixA)],
-                            getShades(colixB)[getShadeIndex(normixB)],
-                            getShades(colixC)[getShadeIndex(normixC)]);
+      rgbA = getShades(colixA)[getShadeIndex(normixA)];
+      rgbB = getShades(colixB)[getShadeIndex(normixB)];
+      rgbC = getShades(colixC)[getShadeIndex(normixC)];
       useGouraud = true;
     }
+    if (isTiled(colixCurrent, colixCurrent)) {
+      tiles.addTriangle(screenA, screenB, screenC, useGouraud, rgbA, rgbB, rgbC);
+      return;
+    }
+    if (useGouraud)
+      ((TriangleRenderer) triangle3d).setGouraud(rgbA, rgbB, rgbC);
     ((TriangleRenderer) triangle3d).fillTriangleP3i(screenA, screenB, screenC, useGouraud);
     //triangle3d.fillTriangleP3if(screenA, screenB, screenC, 0.1f, useGouraud);
   }
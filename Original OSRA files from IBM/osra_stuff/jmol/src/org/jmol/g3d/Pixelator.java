@@ -62,6 +62,10 @@ class Pixelator {
         Graphics3D.mergeBufferPixel(g.pbuf, offset, argb, g.bgcolor);
       g.zbufT[offset] = z;
       g.pbufT[offset] = p & g.translucencyMask;
+      if (offset < g.dirtyMinT)
+        g.dirtyMinT = offset;
+      if (offset > g.dirtyMaxT)
+        g.dirtyMaxT = offset;
     } else if (z == zT) {
     } else if (!g.translucentCoverOnly && z - zT > g.zMargin) {
         // oops-out of order
@@ -55,6 +55,12 @@ class Platform3D {
   Platform3D(GenericPlatform apiPlatform) {
     //initialize(desireClearingThread);
     this.apiPlatform = apiPlatform;
+    BufferPool.addPlatform();
+  }
+
+  void destroy() {
+    releaseBuffers();
+    BufferPool.removePlatform();
   }
   
   Object getGraphicsForMetrics() {
@@ -71,9 +77,11 @@ class Platform3D {
 //  }
 
   void allocateTBuffers(boolean antialiasTranslucent) {
+    BufferPool.releaseBuffer(zBufferT);
+    BufferPool.releaseBuffer(pBufferT);
     bufferSizeT = (antialiasTranslucent ? bufferSize : windowSize);
-    zBufferT = new int[bufferSizeT];
-    pBufferT = new int[bufferSizeT];    
+    zBufferT = BufferPool.getBuffer(bufferSizeT);
+    pBufferT = BufferPool.getBuffer(bufferSizeT);
   }
   
   /**
@@ -94,8 +102,8 @@ class Platform3D {
     bufferHeight = height;
     
     bufferSize = bufferWidth * bufferHeight;
-    zBuffer = new int[bufferSize];
-    pBuffer = new int[bufferSize];
+    zBuffer = BufferPool.getBuffer(bufferSize);
+    pBuffer = BufferPool.getBuffer(bufferSize);
     // original thought was that there is
     // no nebed for any antialiasing on a translucent buffer
     // but that's simply not true.
@@ -109,6 +117,10 @@ class Platform3D {
       apiPlatform.flushImage(bufferedImage);
       bufferedImage = null;
     }
+    BufferPool.releaseBuffer(pBuffer);
+    BufferPool.releaseBuffer(zBuffer);
+    BufferPool.releaseBuffer(pBufferT);
+    BufferPool.releaseBuffer(zBufferT);
     pBuffer = null;
     zBuffer = null;
     pBufferT = null;
@@ -138,7 +150,16 @@ class Platform3D {
   }
   
   void clearTBuffer() {
-    for (int i = bufferSizeT; --i >= 0; ) {
+    clearTBufferRange(0, bufferSizeT);
+  }
+
+  /**
+   * @param offsetMin
+   * @param offsetMax
+   *        exclusive
+   */
+  void clearTBufferRange(int offsetMin, int offsetMax) {
+    for (int i = offsetMax; --i >= offsetMin; ) {
       zBufferT[i] = Integer.MAX_VALUE;
       pBufferT[i] = 0;
     }
@@ -151,6 +151,19 @@ public class SphereRenderer {
     //System.out.println("sphere3d " + nIn + " " + nOut + " " + (1.0 * nIn / (nIn + nOut)));
   } 
   
+  /**
+   * Creates the cached shape for spheres of this diameter, if they have one,
+   * so that the bands of a TileRenderer only read the cache.
+   * 
+   * @param diameter
+   */
+  void cacheSphereShape(int diameter) {
+    if (diameter > maxOddSizeSphere)
+      diameter &= ~1;
+    if (diameter <= Shader.maxSphereCache)
+      getSphereShape(diameter);
+  }
+
   private int[] getSphereShape(int diameter) {
     int[] ss;
     return ((ss = shader.sphereShapeCache[diameter - 1]) == null ? createSphereShape(diameter): ss);
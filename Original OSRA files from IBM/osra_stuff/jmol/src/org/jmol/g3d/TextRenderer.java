@@ -25,9 +25,11 @@
 package org.jmol.g3d;
 
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.jmol.api.JmolRendererInterface;
+import org.jmol.util.Logger;
 
 import javajs.awt.Font;
 import javajs.util.CU;
@@ -70,16 +72,42 @@ class TextRenderer {
   private boolean isInvalid;
   private final static byte[] translucency = new byte[] { 7, 6, 5, 4, 3, 2, 1, 8 };
   private static boolean working;
-  private final static Map<Font, Map<String, TextRenderer>> htFont3d = new Hashtable<Font, Map<String, TextRenderer>>();
-  private final static Map<Font, Map<String, TextRenderer>> htFont3dAntialias = new Hashtable<Font, Map<String, TextRenderer>>();
+
+  /**
+   * maximum number of fonts with an atlas, for each of plain and antialiased
+   * text; the least recently used atlas is dropped beyond that
+   */
+  final static int atlasCountMax = 32;
+
+  /**
+   * maximum number of composed strings kept by each atlas; the least recently
+   * used string is dropped beyond that
+   */
+  final static int stringCountMax = 1024;
+
+  private final static Map<Font, GlyphAtlas> htFont3d = newAtlasCache();
+  private final static Map<Font, GlyphAtlas> htFont3dAntialias = newAtlasCache();
+
+  private static int nStringsFound, nStringsComposed, nGlyphs;
 
   synchronized static void clearFontCache() {
     if (working)
       return;
+    if (Logger.debugging)
+      Logger.debug(getCacheInfo());
     htFont3d.clear();
     htFont3dAntialias.clear();
   }
 
+  /**
+   * @return hit and miss counts of the string caches since the start and the
+   *         number of glyphs rasterized
+   */
+  synchronized static String getCacheInfo() {
+    return "TextRenderer: " + nStringsFound + " strings found, "
+        + nStringsComposed + " composed, " + nGlyphs + " glyphs rasterized";
+  }
+
   static int plot(int x, int y, int z, int argb, int bgargb,
                          String text, Font font3d,
                          Graphics3D g3d, JmolRendererInterface jmolRenderer, boolean antialias) {
@@ -224,35 +252,82 @@ class TextRenderer {
                                                String text, Font font3d,
                                                boolean antialias) {
     TextRenderer.working = true;
-    Map<Font, Map<String, TextRenderer>> ht = (antialias ? TextRenderer.htFont3dAntialias : TextRenderer.htFont3d);
-    Map<String, TextRenderer> htForThisFont = ht.get(font3d);
+    Map<Font, GlyphAtlas> ht = (antialias ? TextRenderer.htFont3dAntialias : TextRenderer.htFont3d);
+    GlyphAtlas atlas = ht.get(font3d);
     TextRenderer text3d = null;
     boolean newFont = false;
-    boolean newText = false;
-    if (htForThisFont != null) {
-      text3d = htForThisFont.get(text);
+    if (atlas != null) {
+      text3d = (text.length() == 1 ? atlas.getGlyph(text.charAt(0)) : atlas.strings.get(text));
     } else {
-      htForThisFont = new Hashtable<String, TextRenderer>();
+      atlas = new GlyphAtlas();
       newFont = true;
     }
     if (text3d == null) {
       text3d = new TextRenderer(text, font3d);
-      newText = true;
+    } else {
+      nStringsFound++;
     }
     text3d.isInvalid = (text3d.width == 0 || x + text3d.width <= 0
         || x >= g3d.width || y + text3d.height <= 0 || y >= g3d.height);
-    if (text3d.isInvalid)
+    if (text3d.isInvalid) {
+      TextRenderer.working = false;
       return text3d;
+    }
     if (newFont)
-      ht.put(font3d, htForThisFont);
-    if (newText) {
-      text3d.setTranslucency(text, font3d, g3d);
-      htForThisFont.put(text, text3d);
+      ht.put(font3d, atlas);
+    if (text3d.tmap == null) {
+      nStringsComposed++;
+      if (text.length() == 1) {
+        text3d.setTranslucency(text, font3d, g3d);
+        atlas.setGlyph(text.charAt(0), text3d);
+      } else {
+        text3d.compose(text, font3d, g3d, atlas);
+        atlas.strings.put(text, text3d);
+      }
     }
     TextRenderer.working = false;
     return text3d;
   }
 
+  /**
+   * build the map of a string from the maps of its characters, rasterizing
+   * only the characters not yet in the atlas; the map keeps the width of the
+   * string, font3d.stringWidth(text), which the label layout and the clipping
+   * in plot() use, so it is padded or clipped where the sum of the character
+   * widths differs from that
+   * 
+   * @param text
+   * @param font3d
+   * @param g3d
+   * @param atlas
+   */
+  private void compose(String text, Font font3d, Graphics3D g3d,
+                       GlyphAtlas atlas) {
+    int len = text.length();
+    TextRenderer[] glyphs = new TextRenderer[len];
+    for (int i = 0; i < len; i++) {
+      char ch = text.charAt(i);
+      TextRenderer glyph = atlas.getGlyph(ch);
+      if (glyph == null) {
+        String s = text.substring(i, i + 1);
+        glyph = new TextRenderer(s, font3d);
+        if (glyph.width > 0)
+          glyph.setTranslucency(s, font3d, g3d);
+        atlas.setGlyph(ch, glyph);
+      }
+      glyphs[i] = glyph;
+    }
+    tmap = new byte[size];
+    for (int i = 0, x = 0; i < len && x < mapWidth; x += glyphs[i++].width) {
+      TextRenderer glyph = glyphs[i];
+      int w = Math.min(glyph.mapWidth, mapWidth - x);
+      if (glyph.tmap == null || w <= 0)
+        continue;
+      for (int row = 0, pt = 0; row < height; row++, pt += glyph.mapWidth)
+        System.arraycopy(glyph.tmap, pt, tmap, row * mapWidth + x, w);
+    }
+  }
+
   /**
    * retrieve grey-scale pixel map from the platform, then round it off
    * 
@@ -264,9 +339,10 @@ class TextRenderer {
     int[] pixels = g3d.apiPlatform.getTextPixels(text, font3d, g3d.platform
         .getGraphicsForTextOrImage(mapWidth, height),
         g3d.platform.offscreenImage, mapWidth, height, ascent);
+    nGlyphs++;
+    tmap = new byte[size];
     if (pixels == null)
       return;
-    tmap = new byte[size];
     for (int i = pixels.length; --i >= 0;) {
       int p = pixels[i] & 0xFF;
       if (p != 0) {
@@ -275,4 +351,52 @@ class TextRenderer {
     }
   }
 
+  /**
+   * The maps of one font: every character rasterized once, and the strings
+   * composed from them, of which only the most recently used are kept.
+   * Labels of hundreds of thousands of atoms may all differ, but they are
+   * made of a few dozen characters.
+   */
+  private static class GlyphAtlas {
+
+    private final TextRenderer[] glyphs = new TextRenderer[256];
+    private Map<Character, TextRenderer> htGlyphs;
+
+    final Map<String, TextRenderer> strings = new LinkedHashMap<String, TextRenderer>(
+        16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, TextRenderer> eldest) {
+        return size() > stringCountMax;
+      }
+    };
+
+    TextRenderer getGlyph(char ch) {
+      return (ch < 256 ? glyphs[ch] : htGlyphs == null ? null : htGlyphs
+          .get(Character.valueOf(ch)));
+    }
+
+    void setGlyph(char ch, TextRenderer glyph) {
+      if (ch < 256) {
+        glyphs[ch] = glyph;
+        return;
+      }
+      if (htGlyphs == null)
+        htGlyphs = new Hashtable<Character, TextRenderer>();
+      htGlyphs.put(Character.valueOf(ch), glyph);
+    }
+  }
+
+  /**
+   * @return a map of atlases by font, which drops the least recently used
+   *         atlas beyond atlasCountMax
+   */
+  private static Map<Font, GlyphAtlas> newAtlasCache() {
+    return new LinkedHashMap<Font, GlyphAtlas>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Font, GlyphAtlas> eldest) {
+        return size() > atlasCountMax;
+      }
+    };
+  }
+
 }
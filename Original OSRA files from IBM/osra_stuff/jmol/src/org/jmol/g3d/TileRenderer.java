@@ -0,0 +1,329 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-12-11 16:07:42 -0600 (Wed, 11 Dec 2013) $
+ *
+ * Copyright (C) 2003-2006  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.g3d;
+
+import javajs.util.AU;
+import javajs.util.P3i;
+
+import org.jmol.util.C;
+import org.jmol.viewer.Viewer;
+
+/**
+ *<p>
+ * Tiled rendering of the opaque pass: Graphics3D hands its spheres,
+ * cylinders and triangles to this class instead of rasterizing them, and
+ * they are rasterized later, when flush() is called, in full-width
+ * horizontal bands of the screen, one task per band, using
+ * Viewer.runParallel().
+ *</p>
+ *<p>
+ * Each band has its own Graphics3D and renderers, sharing the shader of the
+ * screen, and its own pixel and z buffers. The rows of the band are copied
+ * into these buffers before its primitives are rasterized and back into the
+ * screen buffers afterwards, so no two tasks write the same memory. A few
+ * rows above and below each band are rasterized too but not copied back,
+ * so that nothing of clipping at the band edges is seen. Band heights and
+ * margins are even, so screened pixels keep their checkerboard pattern.
+ *</p>
+ *<p>
+ * Each primitive is saved with the color and slab state of the Graphics3D at
+ * the time, so that it is rasterized just as it would have been at once.
+ * Graphics3D calls flush() whenever pixels already drawn are read or
+ * cleared (text, images, ellipsoids) and before the state that is not
+ * saved changes (lighting, z shading), as well as at the end of the pass.
+ * Primitives drawn directly in the meantime only test and set the z
+ * buffer, so the order hardly matters; only pixels of different
+ * primitives at the same z may come out differently.
+ *</p>
+ *
+ */
+final class TileRenderer {
+
+  private final static int SPHERE = 0;
+  private final static int CYLINDER = 1;
+  private final static int CYLINDER_BITS = 2;
+  private final static int TRIANGLE = 3;
+
+  private final static int bandMargin = 2;
+  private final static int bandHeightMin = 32;
+
+  private final Graphics3D g3d;
+  private final Viewer viewer;
+
+  /**
+   * all saved primitives: type, Graphics3D state, then parameters
+   */
+  private int[] commands = new int[1024];
+  private int commandCount;
+
+  private int width;
+  private int height;
+  private int bandHeight;
+  private int bandCount;
+  private Band[] bands = new Band[0];
+
+  TileRenderer(Graphics3D g3d, Viewer viewer) {
+    this.g3d = g3d;
+    this.viewer = viewer;
+  }
+
+  /**
+   * Sets the bands for a new frame, once the size of the screen buffers is
+   * known.
+   */
+  void begin() {
+    commandCount = 0;
+    if (g3d.width != width || g3d.height != height) {
+      // cached cylinder lines depend on the screen size
+      width = g3d.width;
+      height = g3d.height;
+      for (int i = bands.length; --i >= 0;)
+        bands[i].g.line3d.clearLineCache();
+    }
+    int n = Math.max(2, Viewer.nProcessors * 2);
+    bandHeight = Math.max(bandHeightMin, (((height + n - 1) / n) + 1) & ~1);
+    bandCount = (height + bandHeight - 1) / bandHeight;
+    if (bands.length < bandCount) {
+      Band[] b = new Band[bandCount];
+      System.arraycopy(bands, 0, b, 0, bands.length);
+      for (int i = bands.length; i < bandCount; i++)
+        b[i] = new Band();
+      bands = b;
+    }
+    for (int i = 0; i < bandCount; i++)
+      bands[i].count = 0;
+  }
+
+  void addSphere(int diameter, int x, int y, int z) {
+    g3d.sphere3d.cacheSphereShape(diameter);
+    int r = (diameter + 1) >> 1;
+    int pt = add(SPHERE, 4, y - r, y + r);
+    commands[pt++] = diameter;
+    commands[pt++] = x;
+    commands[pt++] = y;
+    commands[pt] = z;
+  }
+
+  void addCylinder(short colixA, short colixB, boolean isScreenedA,
+                   boolean isScreenedB, byte endcaps, int diameter, int xA,
+                   int yA, int zA, int xB, int yB, int zB) {
+    g3d.getShades(colixA);
+    g3d.getShades(colixB);
+    int r = (diameter + 1) >> 1;
+    int pt = add(CYLINDER, 11, Math.min(yA, yB) - r, Math.max(yA, yB) + r);
+    pt = setCylinder(pt, colixA, colixB, isScreenedA, isScreenedB, endcaps,
+        diameter);
+    commands[pt++] = xA;
+    commands[pt++] = yA;
+    commands[pt++] = zA;
+    commands[pt++] = xB;
+    commands[pt++] = yB;
+    commands[pt] = zB;
+  }
+
+  void addCylinderBits(short colixA, short colixB, boolean isScreenedA,
+                       boolean isScreenedB, byte endcaps, int diameter,
+                       float xA, float yA, float zA, float xB, float yB,
+                       float zB) {
+    g3d.getShades(colixA);
+    g3d.getShades(colixB);
+    int r = (diameter + 1) >> 1;
+    int pt = add(CYLINDER_BITS, 11, (int) Math.floor(Math.min(yA, yB)) - r,
+        (int) Math.ceil(Math.max(yA, yB)) + r);
+    pt = setCylinder(pt, colixA, colixB, isScreenedA, isScreenedB, endcaps,
+        diameter);
+    commands[pt++] = Float.floatToIntBits(xA);
+    commands[pt++] = Float.floatToIntBits(yA);
+    commands[pt++] = Float.floatToIntBits(zA);
+    commands[pt++] = Float.floatToIntBits(xB);
+    commands[pt++] = Float.floatToIntBits(yB);
+    commands[pt] = Float.floatToIntBits(zB);
+  }
+
+  private int setCylinder(int pt, short colixA, short colixB,
+                          boolean isScreenedA, boolean isScreenedB,
+                          byte endcaps, int diameter) {
+    commands[pt++] = colixA;
+    commands[pt++] = colixB;
+    commands[pt++] = (isScreenedA ? 1 : 0) | (isScreenedB ? 2 : 0);
+    commands[pt++] = endcaps;
+    commands[pt++] = diameter;
+    return pt;
+  }
+
+  /**
+   * @param screenA
+   * @param screenB
+   * @param screenC
+   * @param useGouraud
+   *        false to use the current (noisy) color
+   * @param rgbA
+   *        Gouraud colors of the three corners
+   * @param rgbB
+   * @param rgbC
+   */
+  void addTriangle(P3i screenA, P3i screenB, P3i screenC, boolean useGouraud,
+                   int rgbA, int rgbB, int rgbC) {
+    int pt = add(TRIANGLE, 13,
+        Math.min(screenA.y, Math.min(screenB.y, screenC.y)),
+        Math.max(screenA.y, Math.max(screenB.y, screenC.y)));
+    commands[pt++] = (useGouraud ? 1 : 0);
+    commands[pt++] = rgbA;
+    commands[pt++] = rgbB;
+    commands[pt++] = rgbC;
+    pt = setPoint(pt, screenA);
+    pt = setPoint(pt, screenB);
+    setPoint(pt, screenC);
+  }
+
+  private int setPoint(int pt, P3i p) {
+    commands[pt++] = p.x;
+    commands[pt++] = p.y;
+    commands[pt++] = p.z;
+    return pt;
+  }
+
+  /**
+   * Saves the type and the current state and lists the primitive in every
+   * band it reaches.
+   *
+   * @param type
+   * @param n
+   *        number of parameters
+   * @param yMin
+   * @param yMax
+   * @return position of the first parameter
+   */
+  private int add(int type, int n, int yMin, int yMax) {
+    int pt0 = commandCount;
+    int len = pt0 + 1 + Graphics3D.bandStateLength + n;
+    if (len > commands.length)
+      commands = AU.arrayCopyI(commands, Math.max(len, commands.length * 2));
+    commands[pt0] = type;
+    int pt = g3d.saveBandState(commands, pt0 + 1);
+    commandCount = len;
+    // one more row each way for rounding
+    if (--yMin < 0)
+      yMin = 0;
+    if (++yMax >= height)
+      yMax = height - 1;
+    for (int i = yMin / bandHeight, i1 = (yMax < 0 ? -1 : yMax / bandHeight); i <= i1; i++)
+      bands[i].add(pt0);
+    return pt;
+  }
+
+  /**
+   * Rasterizes all saved primitives, a band at a time, in parallel if
+   * possible, and waits for all of them.
+   */
+  void flush() {
+    if (commandCount == 0)
+      return;
+    // have the shader's caches sized for all current colixes, so that
+    // the bands only read them
+    g3d.getShades(C.BLACK);
+    int n = 0;
+    for (int i = 0; i < bandCount; i++)
+      if (bands[i].count > 0)
+        n++;
+    Runnable[] tasks = new Runnable[n];
+    for (int i = 0, j = 0; i < bandCount; i++)
+      if (bands[i].count > 0) {
+        bands[i].y0 = i * bandHeight;
+        tasks[j++] = bands[i];
+      }
+    viewer.runParallel(tasks);
+    commandCount = 0;
+  }
+
+  private class Band implements Runnable {
+
+    final Graphics3D g = new Graphics3D();
+    int[] list = new int[256];
+    int count;
+    int y0;
+    private final P3i ptA = new P3i();
+    private final P3i ptB = new P3i();
+    private final P3i ptC = new P3i();
+
+    Band() {
+      g.initializeBand(g3d);
+    }
+
+    void add(int pt) {
+      if (count == list.length)
+        list = AU.doubleLengthI(list);
+      list[count++] = pt;
+    }
+
+    @Override
+    public void run() {
+      // the margins may be read while the next band copies its rows back,
+      // but what is drawn there is thrown away
+      int yTop = Math.max(0, y0 - bandMargin);
+      int yBottom = Math.min(height, y0 + bandHeight + bandMargin);
+      g.setBand(g3d, yTop, yBottom - yTop);
+      for (int i = 0; i < count; i++)
+        render(list[i], yTop);
+      g.copyBand(g3d, y0 - yTop, y0, Math.min(bandHeight, height - y0));
+      count = 0;
+    }
+
+    private void render(int pt, int dy) {
+      int[] c = commands;
+      int type = c[pt++];
+      pt = g.restoreBandState(c, pt);
+      switch (type) {
+      case SPHERE:
+        g.fillSphereXYZ(c[pt], c[pt + 1], c[pt + 2] - dy, c[pt + 3]);
+        break;
+      case CYLINDER:
+        g.cylinder3d.render((short) c[pt], (short) c[pt + 1],
+            (c[pt + 2] & 1) != 0, (c[pt + 2] & 2) != 0, (byte) c[pt + 3],
+            c[pt + 4], c[pt + 5], c[pt + 6] - dy, c[pt + 7], c[pt + 8],
+            c[pt + 9] - dy, c[pt + 10]);
+        break;
+      case CYLINDER_BITS:
+        g.cylinder3d.renderBits((short) c[pt], (short) c[pt + 1],
+            (c[pt + 2] & 1) != 0, (c[pt + 2] & 2) != 0, (byte) c[pt + 3],
+            c[pt + 4], Float.intBitsToFloat(c[pt + 5]),
+            Float.intBitsToFloat(c[pt + 6]) - dy,
+            Float.intBitsToFloat(c[pt + 7]), Float.intBitsToFloat(c[pt + 8]),
+            Float.intBitsToFloat(c[pt + 9]) - dy,
+            Float.intBitsToFloat(c[pt + 10]));
+        break;
+      case TRIANGLE:
+        TriangleRenderer t = (TriangleRenderer) g.triangle3d;
+        boolean useGouraud = (c[pt] != 0);
+        if (useGouraud)
+          t.setGouraud(c[pt + 1], c[pt + 2], c[pt + 3]);
+        ptA.set(c[pt + 4], c[pt + 5] - dy, c[pt + 6]);
+        ptB.set(c[pt + 7], c[pt + 8] - dy, c[pt + 9]);
+        ptC.set(c[pt + 10], c[pt + 11] - dy, c[pt + 12]);
+        t.fillTriangleP3i(ptA, ptB, ptC, useGouraud);
+        break;
+      }
+    }
+  }
+
+}
@@ -232,7 +232,7 @@ public class TriangleRenderer implements G3DRenderer {
     int yMid = ay[iMidY];
     int yMax = ay[iMaxY];
     int nLines = yMax - yMin + 1;
-    if (nLines > g3d.height * 3)
+    if (nLines > g3d.getRenderHeight() * 3)
       return;
     if (nLines > axW.length)
       reallocRasterArrays(nLines);
@@ -642,6 +642,7 @@ public class Minimizer implements MinimizerInterface {
       atom.y = (float) minAtom.coord[1];
       atom.z = (float) minAtom.coord[2];
     }
+    viewer.modelSet.moveBspfAtoms(bsTaint);
     viewer.refreshMeasures(false);
   }
 
@@ -945,6 +945,29 @@ abstract public class AtomCollection {
       bspf.validateModel(modelIndex, isValid);
   }
 
+  /**
+   * updates the model's tree for an atom that has moved, or invalidates it
+   * if it cannot be updated in place
+   * 
+   * @param atomIndex
+   */
+  private void moveBspfAtom(int atomIndex) {
+    if (bspf != null)
+      bspf.moveTuple(((ModelCollection) this).models[atoms[atomIndex].modelIndex].trajectoryBaseIndex,
+          atoms[atomIndex], atomIndex);
+  }
+
+  /**
+   * for atoms moved without setAtomCoord(), as by the minimizer
+   * 
+   * @param bs
+   */
+  public void moveBspfAtoms(BS bs) {
+    if (bspf != null)
+      for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1))
+        moveBspfAtom(i);
+  }
+
   // state tainting
   
   protected boolean preserveState = true;
@@ -1026,7 +1049,7 @@ abstract public class AtomCollection {
       tainted[type] = BSUtil.newBitSet(atomCount);
     tainted[type].set(atomIndex);
     if (type  == TAINT_COORD)
-      validateBspfForModel(((ModelCollection) this).models[atoms[atomIndex].modelIndex].trajectoryBaseIndex, false);
+      moveBspfAtom(atomIndex);
   }
 
   private void untaint(int atomIndex, byte type) {
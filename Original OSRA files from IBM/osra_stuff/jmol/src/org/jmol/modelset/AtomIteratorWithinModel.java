@@ -63,6 +63,10 @@ public class AtomIteratorWithinModel implements AtomIndexIterator {
    * 
    * ############## ITERATOR SHOULD BE RELEASED #################
    * 
+   * A threadSafe iterator holds a CubeIterator from the shared pool of the
+   * Bspf, which is synchronized, so it should be released once, when its
+   * thread is done with it, not after every search.
+   * 
    * @param bspf
    * @param bsSelected 
    * @param isGreaterOnly 
@@ -93,10 +97,17 @@ public class AtomIteratorWithinModel implements AtomIndexIterator {
  
   @Override
   public void setModel(ModelCollection modelSet, int modelIndex, int firstModelAtom, int atomIndex, P3 center, float distance, RadiusData rd) {
-    if (threadSafe)
-      modelIndex = -1 - modelIndex; // no caching
     if (modelIndex != this.modelIndex || cubeIterator == null) {
-      cubeIterator = bspf.getCubeIterator(modelIndex);
+      if (threadSafe) {
+        // an iterator of our own, not the one cached for the model,
+        // kept for all models until release()
+        if (cubeIterator == null)
+          cubeIterator = bspf.acquireCubeIterator(modelIndex);
+        else
+          bspf.setCubeIterator(cubeIterator, modelIndex);
+      } else {
+        cubeIterator = bspf.getCubeIterator(modelIndex);
+      }
       this.modelIndex = modelIndex;
       //bspf.dump();
     }
@@ -206,7 +217,10 @@ public class AtomIteratorWithinModel implements AtomIndexIterator {
   @Override
   public void release() {
     if (cubeIterator != null) {
-      cubeIterator.release();
+      if (threadSafe)
+        bspf.releaseCubeIterator(cubeIterator);
+      else
+        cubeIterator.release();
       cubeIterator = null;
     }
   }
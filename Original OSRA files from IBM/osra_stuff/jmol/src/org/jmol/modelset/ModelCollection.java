@@ -47,6 +47,7 @@ import org.jmol.api.Triangulator;
 import org.jmol.atomdata.AtomData;
 import org.jmol.atomdata.RadiusData;
 import org.jmol.bspt.Bspf;
+import org.jmol.bspt.Bspt;
 import org.jmol.bspt.CubeIterator;
 import org.jmol.constant.EnumPalette;
 import org.jmol.constant.EnumStructure;
@@ -1669,19 +1670,24 @@ abstract public class ModelCollection extends BondCollection {
     if (showRebondTimes)
       Logger.startTimer("build bspf");
     Bspf bspf = new Bspf(3);
-    if (Logger.debugging)
-      Logger.debug("sequential bspt order");
     BS bsNew = BSUtil.newBitSet(modelCount);
-    for (int i = atomCount; --i >= 0;) {
-      // important that we go backward here, because we are going to 
-      // use System.arrayCopy to expand the array ONCE only
-      Atom atom = atoms[i];
-      if (!atom.isDeleted() && !isTrajectorySubFrame(atom.modelIndex)) {
-        bspf.addTuple(models[atom.modelIndex].trajectoryBaseIndex, atom);
-        bsNew.set(atom.modelIndex);
+    bspf.bulkLoad = viewer.getBoolean(T.bsptbulkload);
+    if (bspf.bulkLoad || atomCount >= Bspt.gridMinCount || modelCount > 1
+        && Viewer.nProcessors > 1) {
+      initializeBsptsByModel(bspf, bsNew);
+    } else {
+      if (Logger.debugging)
+        Logger.debug("sequential bspt order");
+      for (int i = atomCount; --i >= 0;) {
+        // important that we go backward here, because we are going to 
+        // use System.arrayCopy to expand the array ONCE only
+        Atom atom = atoms[i];
+        if (!atom.isDeleted() && !isTrajectorySubFrame(atom.modelIndex)) {
+          bspf.addTuple(models[atom.modelIndex].trajectoryBaseIndex, atom);
+          bsNew.set(atom.modelIndex);
+        }
       }
     }
-    //      }
     if (showRebondTimes) {
       Logger.checkTimer("build bspf", false);
       bspf.stats();
@@ -1694,6 +1700,84 @@ abstract public class ModelCollection extends BondCollection {
 
   }
 
+  /**
+   * Builds the trees of the models in parallel where possible, in at most
+   * one task per processor. Each tree gets the same atoms in the same
+   * (descending) order as in the sequential build, so the trees are identical
+   * no matter how the tasks are scheduled. Large, evenly filled models get a
+   * grid instead of a tree, and with bspf.bulkLoad, each tree is loaded at
+   * once.
+   * 
+   * @param bspf
+   * @param bsNew
+   *        set to the models that have atoms in the forest
+   */
+  private void initializeBsptsByModel(Bspf bspf, BS bsNew) {
+    if (Logger.debugging)
+      Logger.debug("bspt by model");
+    int[] bsptIndex = new int[atomCount];
+    int[] counts = new int[modelCount];
+    for (int i = atomCount; --i >= 0;) {
+      Atom atom = atoms[i];
+      if (atom.isDeleted() || isTrajectorySubFrame(atom.modelIndex)) {
+        bsptIndex[i] = -1;
+      } else {
+        counts[bsptIndex[i] = models[atom.modelIndex].trajectoryBaseIndex]++;
+        bsNew.set(atom.modelIndex);
+      }
+    }
+    int[][] modelAtoms = new int[modelCount][];
+    int nModels = 0;
+    for (int i = modelCount; --i >= 0;)
+      if (counts[i] > 0) {
+        modelAtoms[i] = new int[counts[i]];
+        counts[i] = 0;
+        nModels++;
+      }
+    for (int i = atomCount; --i >= 0;)
+      if (bsptIndex[i] >= 0)
+        modelAtoms[bsptIndex[i]][counts[bsptIndex[i]]++] = i;
+    // one task per processor, not per model; each model goes to the task
+    // with the fewest atoms so far
+    int nTasks = Math.min(nModels, Viewer.nProcessors);
+    Bspt[][] taskBspts = new Bspt[nTasks][nModels];
+    int[][][] taskAtoms = new int[nTasks][nModels][];
+    int[] taskModelCounts = new int[nTasks];
+    int[] taskAtomCounts = new int[nTasks];
+    // creating the trees expands Bspf arrays, so it is done here, not in the tasks
+    for (int i = modelCount; --i >= 0;)
+      if (modelAtoms[i] != null) {
+        int t = 0;
+        for (int j = nTasks; --j > 0;)
+          if (taskAtomCounts[j] < taskAtomCounts[t])
+            t = j;
+        taskBspts[t][taskModelCounts[t]] = bspf.getBspt(i);
+        taskAtoms[t][taskModelCounts[t]++] = modelAtoms[i];
+        taskAtomCounts[t] += modelAtoms[i].length;
+      }
+    Runnable[] tasks = new Runnable[nTasks];
+    for (int t = nTasks; --t >= 0;)
+      tasks[t] = newBsptTask(taskBspts[t], taskAtoms[t], taskModelCounts[t],
+          bspf.bulkLoad);
+    viewer.runParallel(tasks);
+  }
+
+  private Runnable newBsptTask(final Bspt[] bspts, final int[][] atomIndexes,
+                               final int nModels, final boolean bulkLoad) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        for (int m = 0; m < nModels; m++) {
+          int[] indexes = atomIndexes[m];
+          P3[] tuples = new P3[indexes.length];
+          for (int i = 0; i < indexes.length; i++)
+            tuples[i] = atoms[indexes[i]];
+          bspts[m].build(tuples, indexes, tuples.length, bulkLoad);
+        }
+      }
+    };
+  }
+
   protected void initializeBspt(int modelIndex) {
     initializeBspf();
     if (bspf.isInitializedIndex(modelIndex))
@@ -2274,8 +2358,17 @@ abstract public class ModelCollection extends BondCollection {
       }
       i0 = bsCheck.nextSetBit(0);
     }
+    if (Viewer.nProcessors > 1
+        && (isAll ? atomCount : bsCheck.cardinality()) >= autoBondParallelMin) {
+      nNew = autoBondParallel(bsA, bsB, bsExclude, bsBonds, mad, bsCheck, i0,
+          bondTolerance, minBondDistance2);
+      if (showRebondTimes)
+        Logger.checkTimer("autoBond", false);
+      return nNew;
+    }
     AtomIndexIterator iter = getSelectedAtomIterator(null, false, false, true,
         false);
+    int[] pairs = new int[3 * 16];
     for (int i = i0; i >= 0 && i < atomCount; i = (isAll ? i + 1 : bsCheck
         .nextSetBit(i + 1))) {
       boolean isAtomInSetA = (isAll || bsA.get(i));
@@ -2300,6 +2393,7 @@ abstract public class ModelCollection extends BondCollection {
       boolean isFirstExcluded = (bsExclude != null && bsExclude.get(i));
       float searchRadius = myBondingRadius + maxBondingRadius + bondTolerance;
       setIteratorForAtom(iter, -1, i, searchRadius, null);
+      int n = 0;
       while (iter.hasNext()) {
         Atom atomNear = atoms[iter.next()];
         if (atomNear.isDeleted())
@@ -2315,17 +2409,186 @@ abstract public class ModelCollection extends BondCollection {
         short order = getBondOrderFull(myBondingRadius,
             atomNear.getBondingRadiusFloat(), iter.foundDistance2(),
             minBondDistance2, bondTolerance);
-        if (order > 0
-            && checkValencesAndBond(atom, atomNear, order, mad, bsBonds))
-          nNew++;
+        if (order <= 0)
+          continue;
+        if (n + 3 > pairs.length)
+          pairs = AU.doubleLengthI(pairs);
+        pairs[n++] = i;
+        pairs[n++] = atomIndexNear;
+        pairs[n++] = order;
       }
       iter.release();
+      if (bspf.isGrid(models[atom.modelIndex].trajectoryBaseIndex))
+        sortFound(pairs, null, 0, n / 3);
+      for (int j = 0; j < n; j += 3)
+        if (checkValencesAndBond(atom, atoms[pairs[j + 1]], pairs[j + 2], mad,
+            bsBonds))
+          nNew++;
     }
     if (showRebondTimes)
       Logger.checkTimer("autoBond", false);
     return nNew;
   }
 
+  /**
+   * the smallest number of atoms for which autoBondBs4 searches for bonds in
+   * parallel
+   */
+  private final static int autoBondParallelMin = 10000;
+
+  /**
+   * Does the work of autoBondBs4 for large sets of atoms. The atoms are split
+   * into ranges of indexes, and each task collects the pairs that are within
+   * bonding distance in its own buffer, in the order in which the sequential
+   * loop would have found them. The pairs are then checked and bonded here,
+   * range by range, so the bonds are the same, and in the same order, as
+   * with the sequential loop.
+   * 
+   * @param bsA
+   * @param bsB
+   * @param bsExclude
+   * @param bsBonds
+   * @param mad
+   * @param bsCheck
+   *        bsA or bsB, or null for all atoms
+   * @param i0
+   *        first atom to check
+   * @param bondTolerance
+   * @param minBondDistance2
+   * @return number of new bonds
+   */
+  private int autoBondParallel(final BS bsA, final BS bsB, final BS bsExclude,
+                               BS bsBonds, short mad, final BS bsCheck,
+                               int i0, final float bondTolerance,
+                               final float minBondDistance2) {
+    // the trees must all be built before the tasks share them
+    initializeBspf();
+    BS bsModels = (bsCheck == null ? BSUtil.newBitSet2(0, modelCount)
+        : getModelBitSet(bsCheck, false));
+    for (int i = bsModels.nextSetBit(0); i >= 0; i = bsModels.nextSetBit(i + 1))
+      initializeBspt(models[i].trajectoryBaseIndex);
+    int nTasks = Viewer.nProcessors * 4;
+    int chunk = (atomCount - i0 + nTasks - 1) / nTasks;
+    nTasks = (atomCount - i0 + chunk - 1) / chunk;
+    final int[][] found = new int[nTasks][];
+    final int[] foundCounts = new int[nTasks];
+    Runnable[] tasks = new Runnable[nTasks];
+    for (int t = 0; t < nTasks; t++) {
+      final int task = t;
+      final int iFirst = i0 + t * chunk;
+      final int iLast = Math.min(iFirst + chunk, atomCount);
+      tasks[t] = new Runnable() {
+        @Override
+        public void run() {
+          int[] pairs = new int[3 * 16];
+          int n = 0;
+          boolean isAll = (bsCheck == null);
+          AtomIteratorWithinModel iter = new AtomIteratorWithinModel();
+          iter.initialize(bspf, null, false, false, true, true);
+          int lastModelIndex = -1;
+          for (int i = (isAll ? iFirst : bsCheck.nextSetBit(iFirst)); i >= 0
+              && i < iLast; i = (isAll ? i + 1 : bsCheck.nextSetBit(i + 1))) {
+            boolean isAtomInSetA = (isAll || bsA.get(i));
+            boolean isAtomInSetB = (isAll || bsB.get(i));
+            Atom atom = atoms[i];
+            if (atom.isDeleted())
+              continue;
+            int modelIndex = atom.modelIndex;
+            if (modelIndex != lastModelIndex) {
+              lastModelIndex = modelIndex;
+              if (isJmolDataFrameForModel(modelIndex)) {
+                i = models[modelIndex].firstAtomIndex
+                    + models[modelIndex].atomCount - 1;
+                continue;
+              }
+            }
+            float myBondingRadius = atom.getBondingRadiusFloat();
+            if (myBondingRadius == 0)
+              continue;
+            boolean isFirstExcluded = (bsExclude != null && bsExclude.get(i));
+            float searchRadius = myBondingRadius + maxBondingRadius
+                + bondTolerance;
+            setIteratorForAtom(iter, -1, i, searchRadius, null);
+            int n0 = n;
+            while (iter.hasNext()) {
+              Atom atomNear = atoms[iter.next()];
+              if (atomNear.isDeleted())
+                continue;
+              int atomIndexNear = atomNear.index;
+              boolean isNearInSetA = (isAll || bsA.get(atomIndexNear));
+              boolean isNearInSetB = (isAll || bsB.get(atomIndexNear));
+              if (!isNearInSetA && !isNearInSetB
+                  || !(isAtomInSetA && isNearInSetB || isAtomInSetB
+                      && isNearInSetA) || isFirstExcluded
+                  && bsExclude.get(atomIndexNear))
+                continue;
+              short order = getBondOrderFull(myBondingRadius,
+                  atomNear.getBondingRadiusFloat(), iter.foundDistance2(),
+                  minBondDistance2, bondTolerance);
+              if (order <= 0)
+                continue;
+              if (n + 3 > pairs.length)
+                pairs = AU.doubleLengthI(pairs);
+              pairs[n++] = i;
+              pairs[n++] = atomIndexNear;
+              pairs[n++] = order;
+            }
+            if (bspf.isGrid(models[modelIndex].trajectoryBaseIndex))
+              sortFound(pairs, null, n0 / 3, n / 3);
+          }
+          iter.release();
+          found[task] = pairs;
+          foundCounts[task] = n;
+        }
+      };
+    }
+    viewer.runParallel(tasks);
+    int nNew = 0;
+    for (int t = 0; t < nTasks; t++) {
+      int[] pairs = found[t];
+      for (int j = 0, n = foundCounts[t]; j < n; j += 3)
+        if (checkValencesAndBond(atoms[pairs[j]], atoms[pairs[j + 1]],
+            pairs[j + 2], mad, bsBonds))
+          nNew++;
+    }
+    return nNew;
+  }
+
+  /**
+   * Sorts the candidates found for one atom by the index of the other atom.
+   * A tree returns the atoms near another always in the same order, but a
+   * grid returns them cell by cell, which would make the bonds, and their
+   * order, depend on the size of the cells.
+   * 
+   * @param found
+   *        triples of atom index, other atom index, and bond order
+   * @param values
+   *        a value for each triple, to be moved with it, or null
+   * @param j0
+   *        first triple for the atom
+   * @param j1
+   *        end of the triples for the atom
+   */
+  private static void sortFound(int[] found, float[] values, int j0, int j1) {
+    // insertion sort; an atom has only a few candidates
+    for (int j = j0 + 1; j < j1; j++) {
+      int near = found[j * 3 + 1];
+      int order = found[j * 3 + 2];
+      float value = (values == null ? 0 : values[j]);
+      int k = j;
+      for (; k > j0 && found[k * 3 - 2] > near; k--) {
+        found[k * 3 + 1] = found[k * 3 - 2];
+        found[k * 3 + 2] = found[k * 3 - 1];
+        if (values != null)
+          values[k] = values[k - 1];
+      }
+      found[k * 3 + 1] = near;
+      found[k * 3 + 2] = order;
+      if (values != null)
+        values[k] = value;
+    }
+  }
+
   private int autoBond_Pre_11_9_24(BS bsA, BS bsB, BS bsExclude, BS bsBonds,
                                    short mad) {
     if (atomCount == 0)
@@ -2426,6 +2689,12 @@ abstract public class ModelCollection extends BondCollection {
 
   private static float hbondMin = 2.5f;
 
+  /**
+   * the smallest number of atoms in the "from" set for which autoHbond
+   * searches in parallel
+   */
+  private final static int autoHbondParallelMin = 10000;
+
   /**
    * a generalized formation of HBONDS, carried out in relation to calculate
    * HBONDS {atomsFrom} {atomsTo}. The calculation can create pseudo-H bonds for
@@ -2464,9 +2733,8 @@ abstract public class ModelCollection extends BondCollection {
     }
     Logger.info(haveHAtoms ? "Standard Hbond calculation"
         : "Jmol pseudo-hbond calculation");
-    BS bsCO = null;
+    final BS bsCO = (haveHAtoms ? null : new BS());
     if (!haveHAtoms) {
-      bsCO = new BS();
       for (int i = bsA.nextSetBit(0); i >= 0; i = bsA.nextSetBit(i + 1)) {
         int atomID = atoms[i].atomID;
         switch (atomID) {
@@ -2481,100 +2749,195 @@ abstract public class ModelCollection extends BondCollection {
         }
       }
     }
-    float maxXYDistance = viewer.getFloat(T.hbondsdistancemaximum);
-    float minAttachedAngle = (float) (viewer.getFloat(T.hbondsangleminimum)
-        * Math.PI / 180);
-    float hbondMax2 = maxXYDistance * maxXYDistance;
-    float hbondMin2 = hbondMin * hbondMin;
-    float hxbondMin2 = 1;
-    float hxbondMax2 = (maxXYDistance > hbondMin ? hbondMin2 : hbondMax2);
-    float hxbondMax = (maxXYDistance > hbondMin ? hbondMin : maxXYDistance);
-    int nNew = 0;
-    float d2 = 0;
-    V3 v1 = new V3();
-    V3 v2 = new V3();
-    if (showRebondTimes && Logger.debugging)
+    final float maxXYDistance = viewer.getFloat(T.hbondsdistancemaximum);
+    final float minAttachedAngle = (float) (viewer
+        .getFloat(T.hbondsangleminimum) * Math.PI / 180);
+    final float hbondMax2 = maxXYDistance * maxXYDistance;
+    final float hbondMin2 = hbondMin * hbondMin;
+    final float hxbondMin2 = 1;
+    final float hxbondMax2 = (maxXYDistance > hbondMin ? hbondMin2 : hbondMax2);
+    final float hxbondMax = (maxXYDistance > hbondMin ? hbondMin : maxXYDistance);
+    final boolean haveH = haveHAtoms;
+    final BS bsFrom = bsA;
+    final BS bsTo = bsB;
+    if (showRebondTimes)
       Logger.startTimer("hbond");
-    P3 C = null;
-    P3 D = null;
-    AtomIndexIterator iter = getSelectedAtomIterator(bsB, false, false, false,
-        false);
 
-    for (int i = bsA.nextSetBit(0); i >= 0; i = bsA.nextSetBit(i + 1)) {
-      Atom atom = atoms[i];
-      int elementNumber = atom.getElementNumber();
-      boolean isH = (elementNumber == 1);
-      if (!isH && (haveHAtoms || elementNumber != 7 && elementNumber != 8)
-          || isH && !haveHAtoms)
-        continue;
-      float min2, max2, dmax;
-      boolean firstIsCO;
-      if (isH) {
-        Bond[] b = atom.bonds;
-        if (b == null)
-          continue;
-        boolean isOK = false;
-        for (int j = 0; j < b.length && !isOK; j++) {
-          Atom a2 = b[j].getOtherAtom(atom);
-          int element = a2.getElementNumber();
-          isOK = (element == 7 || element == 8);
-        }
-        if (!isOK)
-          continue;
-        dmax = hxbondMax;
-        min2 = hxbondMin2;
-        max2 = hxbondMax2;
-        firstIsCO = false;
-      } else {
-        dmax = maxXYDistance;
-        min2 = hbondMin2;
-        max2 = hbondMax2;
-        firstIsCO = bsCO.get(i);
-      }
-      setIteratorForAtom(iter, -1, atom.index, dmax, null);
-      while (iter.hasNext()) {
-        Atom atomNear = atoms[iter.next()];
-        int elementNumberNear = atomNear.getElementNumber();
-        if (atomNear == atom || !isH && elementNumberNear != 7
-            && elementNumberNear != 8 || isH && elementNumberNear == 1
-            || (d2 = iter.foundDistance2()) < min2 || d2 > max2 || firstIsCO
-            && bsCO.get(atomNear.index) || atom.isBonded(atomNear)) {
-          continue;
+    // The donors are split into ranges of atom indexes, searched in parallel
+    // for large sets. Each task records its candidate hbonds in order; they
+    // are then added here, range by range, checking again what an earlier
+    // candidate may have changed, so the result is the same as a serial loop.
+
+    int iFirst = bsA.nextSetBit(0);
+    int nTasks = (iFirst >= 0 && Viewer.nProcessors > 1
+        && bsA.cardinality() >= autoHbondParallelMin ? Viewer.nProcessors * 4
+        : 1);
+    int chunk = (iFirst < 0 ? 1 : (bsA.length() - iFirst + nTasks - 1) / nTasks);
+    final boolean threadSafe = (nTasks > 1);
+    if (threadSafe) {
+      // the trees must all be built before the tasks share them
+      initializeBspf();
+      BS bsModels = getModelBitSet(bsA, false);
+      for (int i = bsModels.nextSetBit(0); i >= 0; i = bsModels.nextSetBit(i + 1))
+        initializeBspt(models[i].trajectoryBaseIndex);
+    }
+    final int[][] found = new int[nTasks][];
+    final float[][] foundEnergies = new float[nTasks][];
+    final int[] foundCounts = new int[nTasks];
+    Runnable[] tasks = new Runnable[nTasks];
+    for (int t = 0; t < nTasks; t++) {
+      final int task = t;
+      final int i0 = iFirst + t * chunk;
+      final int i1 = (t == nTasks - 1 ? Integer.MAX_VALUE : i0 + chunk);
+      tasks[t] = new Runnable() {
+        @Override
+        public void run() {
+          int[] pairs = new int[3 * 16];
+          float[] energies = new float[16];
+          int n = 0;
+          float d2 = 0;
+          V3 v1 = new V3();
+          V3 v2 = new V3();
+          P3 C = null;
+          P3 D = null;
+          AtomIndexIterator iter;
+          if (threadSafe) {
+            AtomIteratorWithinModel it = new AtomIteratorWithinModel();
+            it.initialize(bspf, bsTo, false, false, false, true);
+            iter = it;
+          } else {
+            iter = getSelectedAtomIterator(bsTo, false, false, false, false);
+          }
+          for (int i = (i0 < 0 ? -1 : bsFrom.nextSetBit(i0)); i >= 0 && i < i1; i = bsFrom
+              .nextSetBit(i + 1)) {
+            Atom atom = atoms[i];
+            int elementNumber = atom.getElementNumber();
+            boolean isH = (elementNumber == 1);
+            if (!isH && (haveH || elementNumber != 7 && elementNumber != 8)
+                || isH && !haveH)
+              continue;
+            float min2, max2, dmax;
+            boolean firstIsCO;
+            if (isH) {
+              Bond[] b = atom.bonds;
+              if (b == null)
+                continue;
+              boolean isOK = false;
+              for (int j = 0; j < b.length && !isOK; j++) {
+                Atom a2 = b[j].getOtherAtom(atom);
+                int element = a2.getElementNumber();
+                isOK = (element == 7 || element == 8);
+              }
+              if (!isOK)
+                continue;
+              dmax = hxbondMax;
+              min2 = hxbondMin2;
+              max2 = hxbondMax2;
+              firstIsCO = false;
+            } else {
+              dmax = maxXYDistance;
+              min2 = hbondMin2;
+              max2 = hbondMax2;
+              firstIsCO = bsCO.get(i);
+            }
+            setIteratorForAtom(iter, -1, atom.index, dmax, null);
+            int n0 = n;
+            while (iter.hasNext()) {
+              Atom atomNear = atoms[iter.next()];
+              int elementNumberNear = atomNear.getElementNumber();
+              if (atomNear == atom || !isH && elementNumberNear != 7
+                  && elementNumberNear != 8 || isH && elementNumberNear == 1
+                  || (d2 = iter.foundDistance2()) < min2 || d2 > max2
+                  || firstIsCO && bsCO.get(atomNear.index)
+                  || atom.isBonded(atomNear)) {
+                continue;
+              }
+              if (minAttachedAngle > 0) {
+                v1.sub2(atom, atomNear);
+                if ((D = checkMinAttachedAngle(atom, minAttachedAngle, v1, v2,
+                    haveH)) == null)
+                  continue;
+                v1.scale(-1);
+                if ((C = checkMinAttachedAngle(atomNear, minAttachedAngle, v1,
+                    v2, haveH)) == null)
+                  continue;
+              }
+              float energy = 0;
+              int bo;
+              if (isH && !Float.isNaN(C.x) && !Float.isNaN(D.x)) {
+                /*
+                 * A crude calculation based on simple distances. In the NH -- O=C
+                 * case this reads DH -- A=C
+                 * 
+                 * (+) H .......... A (-) | | | | (-) D C (+)
+                 * 
+                 * 
+                 * E = Q/rAH - Q/rAD + Q/rCD - Q/rCH
+                 */
+
+                bo = JmolEdge.BOND_H_CALC;
+                energy = HBond.getEnergy((float) Math.sqrt(d2),
+                    C.distance(atom), C.distance(D), atomNear.distance(D)) / 1000f;
+              } else {
+                bo = JmolEdge.BOND_H_REGULAR;
+              }
+              if (n == energies.length) {
+                pairs = AU.doubleLengthI(pairs);
+                energies = AU.doubleLengthF(energies);
+              }
+              pairs[n * 3] = i;
+              pairs[n * 3 + 1] = atomNear.index;
+              pairs[n * 3 + 2] = bo;
+              energies[n++] = energy;
+            }
+            if (bspf.isGrid(models[atom.modelIndex].trajectoryBaseIndex))
+              sortFound(pairs, energies, n0, n);
+          }
+          iter.release();
+          found[task] = pairs;
+          foundEnergies[task] = energies;
+          foundCounts[task] = n;
         }
+      };
+    }
+    if (showRebondTimes)
+      Logger.startTimer("hbond search");
+    viewer.runParallel(tasks);
+    if (showRebondTimes) {
+      Logger.checkTimer("hbond search", false);
+      Logger.startTimer("hbond merge");
+    }
+    int nNew = 0;
+    V3 v1 = new V3();
+    V3 v2 = new V3();
+    for (int t = 0; t < nTasks; t++) {
+      int[] pairs = found[t];
+      float[] energies = foundEnergies[t];
+      for (int j = 0, n = foundCounts[t]; j < n; j++) {
+        Atom atom = atoms[pairs[j * 3]];
+        Atom atomNear = atoms[pairs[j * 3 + 1]];
+        if (atom.isBonded(atomNear))
+          continue; // formed by an earlier candidate
         if (minAttachedAngle > 0) {
+          // an atom with no bonds passes the angle check, but not once an
+          // earlier candidate has given it an hbond
           v1.sub2(atom, atomNear);
-          if ((D = checkMinAttachedAngle(atom, minAttachedAngle, v1, v2,
-              haveHAtoms)) == null)
+          if (checkMinAttachedAngle(atom, minAttachedAngle, v1, v2,
+              haveHAtoms) == null)
             continue;
           v1.scale(-1);
-          if ((C = checkMinAttachedAngle(atomNear, minAttachedAngle, v1, v2,
-              haveHAtoms)) == null)
+          if (checkMinAttachedAngle(atomNear, minAttachedAngle, v1, v2,
+              haveHAtoms) == null)
             continue;
         }
-        float energy = 0;
-        short bo;
-        if (isH && !Float.isNaN(C.x) && !Float.isNaN(D.x)) {
-          /*
-           * A crude calculation based on simple distances. In the NH -- O=C
-           * case this reads DH -- A=C
-           * 
-           * (+) H .......... A (-) | | | | (-) D C (+)
-           * 
-           * 
-           * E = Q/rAH - Q/rAD + Q/rCD - Q/rCH
-           */
-
-          bo = JmolEdge.BOND_H_CALC;
-          energy = HBond.getEnergy((float) Math.sqrt(d2), C.distance(atom),
-              C.distance(D), atomNear.distance(D)) / 1000f;
-        } else {
-          bo = JmolEdge.BOND_H_REGULAR;
-        }
-        bsHBonds.set(addHBond(atom, atomNear, bo, energy));
+        bsHBonds.set(addHBond(atom, atomNear, pairs[j * 3 + 2], energies[j]));
         nNew++;
       }
     }
-    iter.release();
+    if (showRebondTimes) {
+      Logger.checkTimer("hbond merge", false);
+      Logger.info("hbond: " + nTasks + " task(s), " + nNew + " hbonds");
+    }
     shapeManager.setShapeSizeBs(JC.SHAPE_STICKS, Integer.MIN_VALUE, null,
         bsHBonds);
     if (showRebondTimes)
@@ -0,0 +1,163 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-10-17 12:05:38 -0500 (Thu, 17 Oct 2013) $
+ *
+ * Copyright (C) 2003-2005  Miguel, Jmol Development, www.jmol.org
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.jmol.modelset;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.jmol.api.JmolViewer;
+import org.jmol.viewer.Viewer;
+
+/**
+ * Checks calculate hbonds on a box of water oxygens without hydrogens, none
+ * of which has a bond, run in one task and in several. With
+ * hbondsAngleMinimum set, an atom without bonds passes the angle check only
+ * until it gets its first hbond, so each oxygen must end up with at most
+ * one. The hbonds of both runs are compared with each other and with those
+ * of a plain serial loop over the atoms and their neighbors in index order,
+ * which is the order in which autoHbond takes the candidates of a grid.
+ *<p>
+ * The test throws an exception if any of the lists differ.
+ *<p>
+ * usage: java org.jmol.modelset.TestHbond [waterCount]
+ *<p>
+ * Not part of the Jmol jars (Test* classes are excluded).
+ */
+public class TestHbond {
+
+  /**
+   * distance between neighboring waters, inside the default hbond range of
+   * 2.5 to 3.25 A even after the random shifts
+   */
+  private final static float spacing = 2.9f;
+
+  public static void main(String[] args) {
+    int n = (args.length > 0 ? Integer.parseInt(args[0]) : 27000);
+    int side = (int) Math.ceil(Math.pow(n, 1 / 3.0));
+    Random random = new Random(1);
+    // XYZ, not PDB, where an oxygen named O would be taken for a carbonyl
+    StringBuilder sb = new StringBuilder();
+    sb.append(n).append("\nwater box\n");
+    for (int i = 0; i < n; i++) {
+      float x = (i % side) * spacing + (random.nextFloat() - 0.5f) * 0.2f;
+      float y = (i / side % side) * spacing + (random.nextFloat() - 0.5f)
+          * 0.2f;
+      float z = (i / side / side) * spacing + (random.nextFloat() - 0.5f)
+          * 0.2f;
+      sb.append(String.format(Locale.US, "O %.3f %.3f %.3f\n",
+          Float.valueOf(x), Float.valueOf(y), Float.valueOf(z)));
+    }
+    String xyz = sb.toString();
+    Viewer viewer = (Viewer) JmolViewer.allocateViewer(null, null, null,
+        null, null, "-n", null);
+    System.out.println("hbond test: " + n + " waters, spacing " + spacing
+        + " A");
+    Viewer.nProcessors = 1;
+    int[] serial = calculate(viewer, xyz, "1 task");
+    Viewer.nProcessors = 4;
+    int[] parallel = calculate(viewer, xyz, "4 processors");
+    if (!Arrays.equals(serial, parallel))
+      throw new RuntimeException("hbonds differ between 1 task and 4 processors");
+    ModelSet ms = viewer.getModelSet();
+    if (ms.bspf.isGrid(0)) {
+      int[] reference = getReference(ms.atoms, ms.atomCount);
+      if (!Arrays.equals(serial, reference))
+        throw new RuntimeException("hbonds differ from the serial loop: "
+            + serial.length / 2 + " instead of " + reference.length / 2);
+      System.out.println("hbond test: " + serial.length / 2
+          + " hbonds, same as the serial loop");
+    } else {
+      // a tree returns the neighbors in another order, which changes the
+      // oxygen that each one pairs with
+      System.out.println("hbond test: " + serial.length / 2
+          + " hbonds; no grid, so not compared with the serial loop");
+    }
+    // the idle threads of the executor would keep the JVM alive for a minute
+    System.exit(0);
+  }
+
+  private static int[] calculate(Viewer viewer, String xyz, String name) {
+    String error = viewer.loadInline(xyz);
+    if (error != null)
+      throw new RuntimeException(error);
+    viewer.scriptWait("set multiProcessor true; set hbondsRasmol false");
+    long t = System.nanoTime();
+    viewer.scriptWait("calculate hbonds {*} {*}");
+    t = System.nanoTime() - t;
+    ModelSet ms = viewer.getModelSet();
+    int[] pairs = new int[ms.bondCount * 2];
+    int n = 0;
+    for (int i = 0; i < ms.bondCount; i++) {
+      Bond b = ms.bonds[i];
+      if (!b.isHydrogen())
+        continue;
+      pairs[n++] = b.atom1.index;
+      pairs[n++] = b.atom2.index;
+    }
+    System.out.println(name + ": " + n / 2 + " hbonds in " + t / 1000000
+        + " ms");
+    int[] hbonds = new int[n];
+    System.arraycopy(pairs, 0, hbonds, 0, n);
+    checkOnePerAtom(hbonds, ms.atomCount, name);
+    return hbonds;
+  }
+
+  private static void checkOnePerAtom(int[] hbonds, int atomCount, String name) {
+    boolean[] isBonded = new boolean[atomCount];
+    for (int i = 0; i < hbonds.length; i++) {
+      if (isBonded[hbonds[i]])
+        throw new RuntimeException(name + ": atom " + hbonds[i]
+            + " has more than one hbond");
+      isBonded[hbonds[i]] = true;
+    }
+  }
+
+  /**
+   * @param atoms
+   * @param atomCount
+   * @return the hbonds found by going through the atoms, and the neighbors of
+   *         each, in index order, as autoHbond did before it was parallel
+   */
+  private static int[] getReference(Atom[] atoms, int atomCount) {
+    float min2 = 2.5f * 2.5f;
+    float max2 = 3.25f * 3.25f;
+    boolean[] isBonded = new boolean[atomCount];
+    int[] pairs = new int[atomCount];
+    int n = 0;
+    for (int i = 0; i < atomCount; i++)
+      for (int j = 0; j < atomCount && !isBonded[i]; j++) {
+        if (j == i || isBonded[j])
+          continue;
+        float d2 = atoms[i].distanceSquared(atoms[j]);
+        if (d2 < min2 || d2 > max2)
+          continue;
+        isBonded[i] = isBonded[j] = true;
+        pairs[n++] = i;
+        pairs[n++] = j;
+      }
+    int[] hbonds = new int[n];
+    System.arraycopy(pairs, 0, hbonds, 0, n);
+    return hbonds;
+  }
+}
@@ -23,6 +23,8 @@
  */
 package org.jmol.modelsetbio;
 
+import org.jmol.bspt.Bspt;
+import org.jmol.bspt.PointVisitor;
 import org.jmol.constant.EnumStructure;
 import org.jmol.java.BS;
 import org.jmol.modelset.Atom;
@@ -33,6 +35,7 @@ import org.jmol.util.C;
 import org.jmol.util.JmolEdge;
 import org.jmol.util.Logger;
 import org.jmol.util.Measure;
+import javajs.util.AU;
 import javajs.util.P3;
 import javajs.util.V3;
 
@@ -272,6 +275,113 @@ public class AminoPolymer extends AlphaPolymer {
               min[i][2] / 1000f, vHBonds);
   }
 
+  /**
+   * DSSP only: the same as calling calcRasmolHydrogenBonds for residues i0
+   * through i1 - 1 of this polymer with each amino polymer of the model in
+   * turn, but considering only the acceptors found in a tree of the alpha
+   * carbons of all those polymers within range of the donor, so the work
+   * does not grow with the size of the whole model. The acceptors are
+   * checked in the same order as there, so ties are resolved the same way.
+   * 
+   * Calls for different residues write to different parts of min, so they
+   * may run in parallel.
+   * 
+   * @param alphaCarbons
+   *        tree of the lead atoms of all amino polymers of the model
+   * @param i0
+   * @param i1
+   * @param min
+   *        [hb1, hb2] for each residue, each [iPolymer2, i2, iEnergy], as six
+   *        consecutive ints per residue
+   * @param dsspIgnoreHydrogens
+   */
+  public void calcDsspHydrogenBonds(Bspt alphaCarbons, int i0, int i1,
+                                    int[] min, boolean dsspIgnoreHydrogens) {
+    P3 pt = new P3();
+    V3 vNH = new V3();
+    AcceptorList acceptors = new AcceptorList();
+    AminoMonomer source;
+    for (int i = Math.max(i0, 1); i < i1; ++i) { //not first N
+      if (!(source = ((AminoMonomer) monomers[i])).getNHPoint(pt, vNH, false,
+          dsspIgnoreHydrogens)
+          || source.getCarbonylOxygenAtom() == null)
+        continue;
+      P3 sourceAlphaPoint = source.getLeadAtom();
+      P3 sourceNitrogenPoint = source.getNitrogenAtom();
+      acceptors.count = 0;
+      // a little extra, so that the exact test below decides
+      alphaCarbons.forEachWithin(sourceAlphaPoint, maxHbondAlphaDistance + 0.1f,
+          false, acceptors);
+      acceptors.sort();
+      int pt0 = i * 6;
+      for (int j = 0; j < acceptors.count; j++) {
+        AminoMonomer target = acceptors.monomers[j];
+        BioPolymer polymer = target.bioPolymer;
+        int index = target.monomerIndex;
+        if (polymer == this && (index == i || index + 1 == i))
+          continue;
+        if (target.getCarbonylOxygenAtom() == null)
+          continue;
+        float dist2 = sourceAlphaPoint.distanceSquared(target.getLeadAtom());
+        if (dist2 >= maxHbondAlphaDistance2)
+          continue;
+        int energy = calcHbondEnergy(sourceNitrogenPoint, pt, target, false);
+        int m;
+        if (energy < min[pt0 + 2]) {
+          min[pt0 + 3] = min[pt0];
+          min[pt0 + 4] = min[pt0 + 1];
+          min[pt0 + 5] = min[pt0 + 2];
+          m = pt0;
+        } else if (energy < min[pt0 + 5]) {
+          m = pt0 + 3;
+        } else {
+          continue;
+        }
+        min[m] = polymer.bioPolymerIndexInModel;
+        min[m + 1] = (energy < -500 ? index : -1 - index); // so that it will not be found, but we can check it
+        min[m + 2] = energy;
+      }
+    }
+  }
+
+  /**
+   * Collects the monomers of the alpha carbons found by
+   * calcDsspHydrogenBonds and puts them in the order in which
+   * calcRasmolHydrogenBonds would check them: by polymer, and from the last
+   * monomer to the first within a polymer.
+   */
+  private static class AcceptorList implements PointVisitor {
+
+    AminoMonomer[] monomers = new AminoMonomer[32];
+    int count;
+
+    AcceptorList() {
+    }
+
+    @Override
+    public void visit(P3 pt, float distance2) {
+      if (count == monomers.length)
+        monomers = (AminoMonomer[]) AU.doubleLength(monomers);
+      monomers[count++] = (AminoMonomer) ((Atom) pt).group;
+    }
+
+    void sort() {
+      for (int i = 1; i < count; i++) {
+        AminoMonomer m = monomers[i];
+        int j = i;
+        for (; j > 0 && isBefore(m, monomers[j - 1]); j--)
+          monomers[j] = monomers[j - 1];
+        monomers[j] = m;
+      }
+    }
+
+    private static boolean isBefore(AminoMonomer a, AminoMonomer b) {
+      int pa = a.bioPolymer.bioPolymerIndexInModel;
+      int pb = b.bioPolymer.bioPolymerIndexInModel;
+      return (pa < pb || pa == pb && a.monomerIndex > b.monomerIndex);
+    }
+  }
+
   /**
    * based on RasMol 2.7.2.1.1 model
    * 
@@ -34,6 +34,21 @@ import org.jmol.shape.Shape;
 
 public class BallsRenderer extends ShapeRenderer {
 
+  private final static int pointDiameter = 4;
+
+  /**
+   * number of slices of depth in which the atoms are drawn when culling
+   */
+  private final static int sliceCount = 4;
+
+  /**
+   * Culling scans the z-buffer once per slice, so it is only worth it when
+   * the atoms cover the screen more than this many times over (summing the
+   * squares of their diameters); for a small molecule, or atoms drawn small,
+   * the scans would cost more than the atoms they save.
+   */
+  private final static float cullCoverageMin = 1;
+
   @Override
   protected boolean render() {
     boolean needTranslucent = false;
@@ -41,19 +56,93 @@ public class BallsRenderer extends ShapeRenderer {
       Atom[] atoms = modelSet.atoms;
       short[] colixes = ((Balls) shape).colixes;
       BS bsOK = viewer.getRenderableBitSet();
-      for (int i = bsOK.nextSetBit(0); i >= 0; i = bsOK.nextSetBit(i + 1)) {
-        Atom atom = atoms[i];
-        if (atom.sD > 0
-            && (atom.getShapeVisibilityFlags() & myVisibilityFlag) != 0) {
-          if (g3d.setColix(colixes == null ? atom.getColix() : Shape.getColix(colixes, i, atom))) {
-            g3d.drawAtom(atom);
-          } else {
-            needTranslucent = true;
+      boolean doCull = (viewer.isOcclusionCulling() && !isExport
+          && !g3d.isPass2());
+      int zMin = Integer.MAX_VALUE;
+      int zMax = Integer.MIN_VALUE;
+      if (doCull) {
+        long area = 0;
+        for (int i = bsOK.nextSetBit(0); i >= 0; i = bsOK.nextSetBit(i + 1)) {
+          Atom atom = atoms[i];
+          if (atom.sD <= 0
+              || (atom.getShapeVisibilityFlags() & myVisibilityFlag) == 0)
+            continue;
+          area += (long) atom.sD * atom.sD;
+          int z = atom.sZ;
+          if (z < zMin)
+            zMin = z;
+          if (z > zMax)
+            zMax = z;
+        }
+        doCull = (zMax > zMin && area >= cullCoverageMin * g3d.getRenderWidth()
+            * g3d.getRenderHeight());
+      }
+      int n = (doCull ? sliceCount : 1);
+      float zStep = (zMax - zMin) / (float) n;
+      for (int slice = 0, z0 = Integer.MIN_VALUE; slice < n; slice++) {
+        int z1 = (slice == n - 1 ? Integer.MAX_VALUE : zMin
+            + (int) (zStep * (slice + 1)));
+        if (slice > 0 && doCull)
+          setDepthGrid();
+        int nCulled = depthGrid.nCulled;
+        for (int i = bsOK.nextSetBit(0); i >= 0; i = bsOK.nextSetBit(i + 1)) {
+          Atom atom = atoms[i];
+          if (atom.sD > 0 && atom.sZ >= z0 && atom.sZ < z1
+              && (atom.getShapeVisibilityFlags() & myVisibilityFlag) != 0) {
+            if (g3d.setColix(colixes == null ? atom.getColix() : Shape.getColix(colixes, i, atom))) {
+              if (slice == 0 || !doCull || !isHidden(atom))
+                g3d.drawAtom(atom);
+            } else {
+              needTranslucent = true;
+            }
           }
         }
+        z0 = z1;
+        if (slice > 0 && slice < n - 1 && doCull
+            && depthGrid.nCulled == nCulled) {
+          // nothing in this slice was hidden, so the farther ones will
+          // hardly be; draw them all at once, without scanning the z-buffer
+          doCull = false;
+          n = slice + 2;
+        }
       }
+      if (doCull)
+        setDepthGrid();
+    } else if (viewer.checkMotionRendering(T.point)) {
+      renderPoints();
     }
     return needTranslucent;
   }
 
+  private void setDepthGrid() {
+    int[] zbuf = g3d.getGData().getZBuffer();
+    if (zbuf != null)
+      depthGrid.setFromZBuffer(zbuf, g3d.getRenderWidth(),
+          g3d.getRenderHeight());
+  }
+
+  private boolean isHidden(Atom atom) {
+    int r = ((atom.sD + 1) >> 1) + 1;
+    return depthGrid.isValid() && depthGrid.isHidden(atom.sX - r, atom.sY - r, atom.sX + r, atom.sY
+        + r, atom.sZ - r);
+  }
+
+  /**
+   * Draw opaque atoms as small spheres for fast rendering in motion.
+   */
+  private void renderPoints() {
+    Atom[] atoms = modelSet.atoms;
+    short[] colixes = ((Balls) shape).colixes;
+    BS bsOK = viewer.getRenderableBitSet();
+    for (int i = bsOK.nextSetBit(0); i >= 0; i = bsOK.nextSetBit(i + 1)) {
+      Atom atom = atoms[i];
+      if (atom.sD > 0
+          && (atom.getShapeVisibilityFlags() & myVisibilityFlag) != 0
+          && g3d.setColix(colixes == null ? atom.getColix() : Shape.getColix(
+              colixes, i, atom)))
+        g3d.fillSphereXYZ(Math.min(atom.sD, pointDiameter), atom.sX,
+            atom.sY, atom.sZ);
+    }
+  }
+
 }
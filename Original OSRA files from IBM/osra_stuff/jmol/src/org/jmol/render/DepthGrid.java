@@ -0,0 +1,122 @@
+/* $RCSfile$
+ * $Author: hansonr $
+ * $Date: 2013-12-11 16:07:42 -0600 (Wed, 11 Dec 2013) $
+ * $Revision: 19081 $
+ *
+ * Copyright (C) 2003-2005  The Jmol Development Team
+ *
+ * Contact: jmol-developers@lists.sf.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.jmol.render;
+
+import java.util.Arrays;
+
+/**
+ * A coarse depth buffer for occlusion culling in the opaque pass.
+ *<p>
+ * The screen is divided into tiles of 4x4 pixels, and each tile holds the
+ * farthest z-buffer value of its pixels, taken after some of the opaque
+ * primitives have been drawn. A primitive whose bounding box lies only on
+ * tiles nearer than its own nearest point would fail the z-buffer test at
+ * every pixel, so it need not be drawn at all.
+ *<p>
+ * BallsRenderer draws the atoms in slices of depth, nearest first, and
+ * updates the grid from the z-buffer after each slice, so that the near
+ * atoms hide the far ones. It updates the grid once more at the end for
+ * SticksRenderer. This is only done with occlusionCulling set, since the
+ * atoms are then drawn in another order and the edges where spheres meet
+ * may come out a few pixels different; and only for models with many atoms
+ * on screen. It stops after a slice in which nothing was hidden; the grid
+ * is then left as it was, older but still safe to test against, since the
+ * z-buffer only gets nearer. RepaintManager clears the grid at the start of each frame.
+ *
+ */
+final class DepthGrid {
+
+  private final static int tileShift = 2;
+  private final static int tileSize = 1 << tileShift;
+
+  private int[] depths = new int[0];
+  private int nx, ny;
+  private boolean isValid;
+
+  int nCulled, nTested;
+
+  void clear() {
+    isValid = false;
+    nCulled = nTested = 0;
+  }
+
+  /**
+   * @return true if the grid has been set in this frame
+   */
+  boolean isValid() {
+    return isValid;
+  }
+
+  /**
+   * set each tile to the farthest depth of its pixels
+   * 
+   * @param zbuf
+   * @param width
+   * @param height
+   */
+  void setFromZBuffer(int[] zbuf, int width, int height) {
+    nx = (width + tileSize - 1) >> tileShift;
+    ny = (height + tileSize - 1) >> tileShift;
+    if (depths.length < nx * ny)
+      depths = new int[nx * ny];
+    Arrays.fill(depths, 0, nx * ny, Integer.MIN_VALUE);
+    for (int y = 0, pt = 0; y < height; y++) {
+      int t0 = (y >> tileShift) * nx;
+      for (int x = 0; x < width; x++, pt++) {
+        int z = zbuf[pt];
+        int t = t0 + (x >> tileShift);
+        if (z > depths[t])
+          depths[t] = z;
+      }
+    }
+    isValid = true;
+  }
+
+  /**
+   * @param xMin
+   * @param yMin
+   * @param xMax
+   * @param yMax
+   * @param zMin
+   *        the nearest depth of the primitive
+   * @return true if every tile touching the box is nearer than zMin
+   */
+  boolean isHidden(int xMin, int yMin, int xMax, int yMax, int zMin) {
+    int tx0 = Math.max(xMin >> tileShift, 0);
+    int tx1 = Math.min(xMax >> tileShift, nx - 1);
+    int ty0 = Math.max(yMin >> tileShift, 0);
+    int ty1 = Math.min(yMax >> tileShift, ny - 1);
+    if (tx0 > tx1 || ty0 > ty1)
+      return false;
+    nTested++;
+    for (int ty = ty0; ty <= ty1; ty++)
+      for (int i = ty * nx + tx0, i1 = ty * nx + tx1; i <= i1; i++)
+        if (depths[i] >= zMin)
+          return false;
+    nCulled++;
+    return true;
+  }
+
+}
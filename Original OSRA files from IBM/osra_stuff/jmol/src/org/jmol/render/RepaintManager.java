@@ -28,6 +28,8 @@ import java.util.Map;
 import org.jmol.api.JmolRendererInterface;
 import org.jmol.api.JmolRepaintManager;
 import org.jmol.java.BS;
+import org.jmol.modelset.Atom;
+import org.jmol.modelset.Bond;
 import org.jmol.modelset.ModelSet;
 import org.jmol.script.T;
 import org.jmol.shape.Shape;
@@ -38,6 +40,8 @@ import org.jmol.viewer.JC;
 import org.jmol.viewer.ShapeManager;
 import org.jmol.viewer.Viewer;
 
+import javajs.util.P3;
+
 public class RepaintManager implements JmolRepaintManager {
 
   private Viewer viewer;
@@ -49,6 +53,7 @@ public class RepaintManager implements JmolRepaintManager {
   }
   
   private final BS bsTranslucent = BS.newN(JC.SHAPE_MAX);
+  private final DepthGrid depthGrid = new DepthGrid();
   
   @Override
   public void set(Viewer viewer, ShapeManager shapeManager) {
@@ -186,6 +191,7 @@ public class RepaintManager implements JmolRepaintManager {
       Class<?> shapeClass = Class.forName(className);
       ShapeRenderer renderer = (ShapeRenderer) shapeClass.newInstance();
       renderer.setViewerG3dShapeID(viewer, shapeID);
+      renderer.depthGrid = depthGrid;
       return renderers[shapeID] = renderer;
     } catch (Exception e) {
       Logger.errorEx("Could not instantiate renderer:" + className, e);
@@ -193,16 +199,211 @@ public class RepaintManager implements JmolRepaintManager {
     }
   }
 
+  /////////// level of detail ///////////
+
+  /**
+   * the platform speed for rendering in motion when platformSpeed is 0;
+   * lowered, so that atoms become points and bonds lines, and so on, while
+   * frames take longer than motionFrameMs, and raised again while they take
+   * less than half of that; kept from one motion to the next
+   */
+  private int motionSpeed = 10;
+
+  /**
+   * time spent rendering the current frame, ms
+   */
+  private long frameMs;
+
+  @Override
+  public int getMotionSpeed() {
+    return motionSpeed;
+  }
+
+  private void checkMotionSpeed() {
+    if (viewer.getInt(T.platformspeed) == 0 && viewer.isMotionRendering()) {
+      int target = viewer.getMotionFrameMs();
+      if (frameMs > target * 2)
+        motionSpeed = Math.max(motionSpeed - 2, 1);
+      else if (frameMs > target)
+        motionSpeed = Math.max(motionSpeed - 1, 1);
+      else if (frameMs * 2 < target)
+        motionSpeed = Math.min(motionSpeed + 1, 10);
+    }
+    frameMs = 0;
+  }
+
+  /////////// retained rendering ///////////
+
+  /**
+   * the opaque pass as it was just before shape retainedShape was drawn, in a
+   * frame with key retainedKey and shape versions retainedVersions, from
+   * GData.getRetainedImage(); with retainedRendering set, it is restored
+   * instead of drawing shapes 0 through retainedShape - 1 again, as long as
+   * none of those shapes and nothing else in the key has changed
+   */
+  private Object retainedImage;
+  private int retainedShape;
+
+  /**
+   * the last retained image, no longer valid, whose buffers are reused for
+   * the next one
+   */
+  private Object spareImage;
+
+  /**
+   * set when the image is to be saved in this frame, before shape
+   * retainedShape is drawn
+   */
+  private boolean retainPending;
+  private long retainedKey;
+  private final int[] retainedVersions = new int[JC.SHAPE_MAX];
+
+  /**
+   * the key and shape versions of the last frame; a shape that has not
+   * changed since then is likely not to change in the next frame either
+   */
+  private long lastKey;
+  private final int[] lastVersions = new int[JC.SHAPE_MAX];
+  private final int[] shapeVersions = new int[JC.SHAPE_MAX];
+
+  private final P3 ptKey = new P3();
+  private final P3 ptKeyScreen = new P3();
+
+  /**
+   * A hash of everything besides the shapes themselves that the opaque pass
+   * depends on: the transform, the window, the crosshairs and rubber band,
+   * the frame, the selection if halos may show it, the settings, and the
+   * screen position, size, color, and visibility of every atom and bond.
+   * 
+   * @param gdata
+   * @param modelSet
+   * @param minMax
+   * @return key
+   */
+  private long getRetainedKey(GData gdata, ModelSet modelSet, int[] minMax) {
+    long key = 1;
+    for (int i = 0; i < 4; i++) {
+      ptKey.set(i == 1 ? 1 : 0, i == 2 ? 1 : 0, i == 3 ? 1 : 0);
+      viewer.transformPtNoClip(ptKey, ptKeyScreen);
+      key = key * 31 + Float.floatToIntBits(ptKeyScreen.x);
+      key = key * 31 + Float.floatToIntBits(ptKeyScreen.y);
+      key = key * 31 + Float.floatToIntBits(ptKeyScreen.z);
+    }
+    key = key * 31 + gdata.getRenderWidth();
+    key = key * 31 + gdata.getRenderHeight();
+    key = key * 31 + (gdata.isAntialiased() ? 1 : 0);
+    key = key * 31 + gdata.slab;
+    key = key * 31 + gdata.depth;
+    key = key * 31 + gdata.bgcolor;
+    if (minMax != null)
+      for (int i = 0; i < 4; i++)
+        key = key * 31 + minMax[i];
+    Rectangle band = viewer.getRubberBandSelection();
+    if (band != null)
+      key = (((key * 31 + band.x) * 31 + band.y) * 31 + band.width) * 31
+          + band.height;
+    key = key * 31 + System.identityHashCode(modelSet);
+    key = key * 31 + viewer.getCurrentModelIndex();
+    key = key * 31 + viewer.getVisibleFramesBitSet().hashCode();
+    if (shapeManager.getShape(JC.SHAPE_HALOS) != null)
+      key = key * 31 + viewer.getSelectionSet(false).hashCode();
+    key = key * 31 + viewer.getSettingsHash();
+    Atom[] atoms = modelSet.atoms;
+    for (int i = modelSet.atomCount; --i >= 0;) {
+      Atom atom = atoms[i];
+      if (atom == null)
+        continue;
+      key = key * 31 + atom.sX;
+      key = key * 31 + atom.sY;
+      key = key * 31 + atom.sZ;
+      key = key * 31 + atom.sD;
+      key = key * 31 + atom.colixAtom;
+      key = key * 31 + atom.madAtom;
+      key = key * 31 + atom.getShapeVisibilityFlags();
+    }
+    Bond[] bonds = modelSet.bonds;
+    for (int i = modelSet.bondCount; --i >= 0;) {
+      Bond bond = bonds[i];
+      if (bond == null)
+        continue;
+      key = key * 31 + bond.colix;
+      key = key * 31 + bond.mad;
+      key = key * 31 + bond.order;
+      key = key * 31 + bond.shapeVisibilityFlags;
+    }
+    return key;
+  }
+
+  /**
+   * @param gdata
+   * @param modelSet
+   * @param minMax
+   * @return the shape to start the opaque pass with
+   */
+  private int checkRetainedImage(GData gdata, ModelSet modelSet, int[] minMax) {
+    long key = getRetainedKey(gdata, modelSet, minMax);
+    int iChanged = (key == lastKey ? JC.SHAPE_MAX : 0);
+    boolean canRestore = (retainedImage != null && key == retainedKey);
+    for (int i = 0; i < JC.SHAPE_MAX; i++) {
+      int v = shapeVersions[i] = shapeManager.getShapeVersion(i);
+      if (iChanged > i && v != lastVersions[i])
+        iChanged = i;
+      if (canRestore && i < retainedShape && v != retainedVersions[i])
+        canRestore = false;
+    }
+    lastKey = key;
+    System.arraycopy(shapeVersions, 0, lastVersions, 0, JC.SHAPE_MAX);
+    int iStart = (canRestore && gdata.setRetainedImage(retainedImage) ? retainedShape
+        : 0);
+    retainPending = (iChanged > iStart);
+    if (retainPending || iStart == 0)
+      dropRetainedImage(true);
+    if (retainPending) {
+      // shapes 0 through iChanged - 1 have not changed since the last frame,
+      // so save the image just before shape iChanged is drawn
+      retainedShape = iChanged;
+      retainedKey = key;
+      System.arraycopy(shapeVersions, 0, retainedVersions, 0, JC.SHAPE_MAX);
+    }
+    return iStart;
+  }
+
+  private void saveRetainedImage(GData gdata) {
+    retainPending = false;
+    // a translucent shape is drawn again in the second pass, 
+    // so it cannot be skipped in the first
+    if (bsTranslucent.nextSetBit(0) < 0) {
+      retainedImage = gdata.getRetainedImage(spareImage);
+      spareImage = null;
+    }
+  }
+
+  /**
+   * @param keepBuffers
+   *        false to free the memory as well, when retained rendering is off
+   */
+  private void dropRetainedImage(boolean keepBuffers) {
+    if (retainedImage != null)
+      spareImage = retainedImage;
+    retainedImage = null;
+    if (!keepBuffers)
+      spareImage = null;
+  }
+
   /////////// actual rendering ///////////
   
   @Override
   public void render(GData gdata, ModelSet modelSet, boolean isFirstPass, int[] minMax) {
     boolean logTime = viewer.getBoolean(T.showtiming);
+    if (isFirstPass)
+      checkMotionSpeed();
+    long t0 = System.currentTimeMillis();
     try {
       JmolRendererInterface g3d = (JmolRendererInterface) gdata;
       g3d.renderBackground(null);
       if (isFirstPass)  {
         bsTranslucent.clearAll();
+        depthGrid.clear();
         if (minMax != null)
           g3d.renderCrossHairs(minMax, viewer.getScreenWidth(), viewer.getScreenHeight(), 
               viewer.getNavigationOffset(), viewer.getNavigationDepthPercent());
@@ -212,8 +413,21 @@ public class RepaintManager implements JmolRepaintManager {
       }
       if (renderers == null)
         renderers = new ShapeRenderer[JC.SHAPE_MAX];
+      int iStart = 0;
+      retainPending = false;
+      if (isFirstPass) {
+        if (viewer.isRetainedRendering() && !viewer.isMotionRendering())
+          iStart = checkRetainedImage(gdata, modelSet, minMax);
+        else
+          dropRetainedImage(viewer.isRetainedRendering());
+        if (logTime && iStart > 0)
+          Logger.info("retained rendering: image of shapes 0 to "
+              + (iStart - 1) + " reused");
+      }
       String msg = null;
-      for (int i = 0; i < JC.SHAPE_MAX && g3d.currentlyRendering(); ++i) {
+      for (int i = iStart; i < JC.SHAPE_MAX && g3d.currentlyRendering(); ++i) {
+        if (retainPending && i == retainedShape)
+          saveRetainedImage(gdata);
         Shape shape = shapeManager.getShape(i);
         if (shape == null)
           continue;
@@ -227,12 +441,18 @@ public class RepaintManager implements JmolRepaintManager {
         if (logTime)
           Logger.checkTimer(msg, false);
       }
+      if (logTime && isFirstPass && depthGrid.isValid())
+        Logger.info("occlusion culling: " + depthGrid.nCulled + " of "
+            + depthGrid.nTested + " atoms and bonds skipped");
+      if (retainPending && g3d.currentlyRendering())
+        saveRetainedImage(gdata);
       g3d.renderAllStrings(null);
     } catch (Exception e) {
       if (!viewer.isJS)
         e.printStackTrace();
       Logger.error("rendering error? " + e);
     }
+    frameMs += System.currentTimeMillis() - t0;
   }
   
   @Override
@@ -249,6 +469,7 @@ public class RepaintManager implements JmolRepaintManager {
       return null;
     }
     g3dExport.renderBackground(g3dExport);
+    depthGrid.clear();
     if (renderers == null)
       renderers = new ShapeRenderer[JC.SHAPE_MAX];
     String msg = null;
@@ -54,6 +54,11 @@ public abstract class ShapeRenderer {
   protected int exportType;
   protected boolean isExport;
 
+  /**
+   * set by RepaintManager; filled by BallsRenderer in the opaque pass
+   */
+  DepthGrid depthGrid;
+
   protected void initRenderer() {}
 
   abstract protected boolean render();
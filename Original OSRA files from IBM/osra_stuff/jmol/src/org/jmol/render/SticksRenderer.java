@@ -259,6 +259,10 @@ public class SticksRenderer extends FontLineShapeRenderer {
       }
     }
 
+    if (!isExport && !isPass2 && !needTranslucent && bondOrder == 1
+        && depthGrid.isValid() && isHidden())
+      return false;
+
     // draw the bond
 
     switch (mask) {
@@ -272,6 +276,15 @@ public class SticksRenderer extends FontLineShapeRenderer {
     return needTranslucent;
   }
     
+  /**
+   * @return true if the bond is behind atoms already in the depth grid
+   */
+  private boolean isHidden() {
+    int r = ((width + 1) >> 1) + 1;
+    return depthGrid.isHidden(Math.min(xA, xB) - r, Math.min(yA, yB) - r,
+        Math.max(xA, xB) + r, Math.max(yA, yB) + r, Math.min(zA, zB) - r);
+  }
+
   private void drawBond(int dottedMask) {
     if (isCartesianExport && bondOrder == 1) {
       // bypass screen rendering and just use the atoms themselves
@@ -911,6 +911,7 @@ public class T {
   public final static int meshscale                      = intparam | 23;
   public final static int minimizationsteps              = intparam | 24;
   public final static int minpixelselradius              = intparam | 25;
+  public final static int motionframems                  = intparam | 33;
   public final static int percentvdwatom                 = intparam | 26;
   public final static int perspectivemodel               = intparam | 27;
   public final static int phongexponent                  = intparam | 28;
@@ -957,6 +958,7 @@ public class T {
   public final static int axeswindow                     = booleanparam | 34;
   public final static int bondmodeor                     = booleanparam | 36;
   public final static int bondpicking                    = booleanparam | 38;
+  public final static int bsptbulkload                   = booleanparam | 39;
 // set mathproperty  public final static int bonds                          = booleanparam | 40;
   public final static int cartoonbaseedges               = booleanparam | 41;
   public final static int cartoonrockets                 = booleanparam | 42;
@@ -1018,6 +1020,7 @@ public class T {
   public final static int navigatesurface                = booleanparam | 110;
   public final static int navigationmode                 = booleanparam | 111;
   public final static int navigationperiodic             = booleanparam | 112;
+  public final static int occlusionculling               = booleanparam | 123;
   public final static int partialdots                    = booleanparam | 113; // 12.1.46
   public final static int pdbaddhydrogens                = booleanparam | 114;
   public final static int pdbgetheader                   = booleanparam | 115;
@@ -1026,6 +1029,7 @@ public class T {
   public final static int preservestate                  = booleanparam | 118;
   public final static int rangeselected                  = booleanparam | 119;
   public final static int refreshing                     = booleanparam | 120;
+  public final static int retainedrendering              = booleanparam | 121;
   public final static int ribbonborder                   = booleanparam | 122;
   public final static int rocketbarrels                  = booleanparam | 124;
   public final static int saveproteinstructurestate      = booleanparam | 126;
@@ -1062,6 +1066,7 @@ public class T {
   public final static int testflag2                      = booleanparam | 186;
   public final static int testflag3                      = booleanparam | 188;
   public final static int testflag4                      = booleanparam | 189;
+  public final static int tiledrendering                 = booleanparam | 187;
   public final static int tracealpha                     = booleanparam | 190;
   public final static int translucent                    = booleanparam | 191;
   public final static int twistedsheets                  = booleanparam | 192;
@@ -2329,6 +2334,7 @@ public class T {
       "meshScale",                                T.t(meshscale),
       "minimizationSteps",                        T.t(minimizationsteps),
       "minPixelSelRadius",                        T.t(minpixelselradius),
+      "motionFrameMs",                            T.t(motionframems),
       "percentVdwAtom",                           T.t(percentvdwatom),
       "perspectiveModel",                         T.t(perspectivemodel),
       "phongExponent",                            T.t(phongexponent),
@@ -2380,6 +2386,7 @@ public class T {
       "axesWindow",                               T.t(axeswindow),
       "bondModeOr",                               T.t(bondmodeor),
       "bondPicking",                              T.t(bondpicking),
+      "bsptBulkLoad",                             T.t(bsptbulkload),
       "bonds",                                    T.t(bonds),
       "bond",                                     null, 
       "cartoonBaseEdges",                         T.t(cartoonbaseedges),
@@ -2447,6 +2454,7 @@ public class T {
       "navigateSurface",                          T.t(navigatesurface),
       "navigationMode",                           T.t(navigationmode),
       "navigationPeriodic",                       T.t(navigationperiodic),
+      "occlusionCulling",                         T.t(occlusionculling),
       "partialDots",                              T.t(partialdots),
       "pdbAddHydrogens",                          T.t(pdbaddhydrogens),
       "pdbGetHeader",                             T.t(pdbgetheader),
@@ -2456,6 +2464,7 @@ public class T {
       "rangeSelected",                            T.t(rangeselected),
       "redoMove",                                 T.t(redomove),
       "refreshing",                               T.t(refreshing),
+      "retainedRendering",                        T.t(retainedrendering),
       "ribbonBorder",                             T.t(ribbonborder),
       "rocketBarrels",                            T.t(rocketbarrels),
       "saveProteinStructureState",                T.t(saveproteinstructurestate),
@@ -2493,6 +2502,7 @@ public class T {
       "testFlag2",                                T.t(testflag2),
       "testFlag3",                                T.t(testflag3),
       "testFlag4",                                T.t(testflag4),
+      "tiledRendering",                           T.t(tiledrendering),
       "traceAlpha",                               T.t(tracealpha),
       "twistedSheets",                            T.t(twistedsheets),
       "undo",                                     T.t(undo),
@@ -15,6 +15,7 @@ import javajs.util.V3;
 import org.jmol.api.JmolGraphicsInterface;
 import org.jmol.api.JmolRendererInterface;
 import org.jmol.constant.EnumStereoMode;
+import org.jmol.viewer.Viewer;
 
 public class GData implements JmolGraphicsInterface {
 
@@ -174,6 +175,39 @@ public class GData implements JmolGraphicsInterface {
     return height;
   }
 
+  /**
+   * @return the z-buffer of the opaque pass, up to date with everything drawn
+   *         so far, or null if there is none
+   */
+  public int[] getZBuffer() {
+    return null;
+  }
+
+  /**
+   * Saves the screen buffers of the opaque pass as drawn so far, along with
+   * the text waiting to be drawn, so that a later frame of the same size can
+   * start from them.
+   * 
+   * @param image
+   *        an image saved before and no longer needed, whose buffers are
+   *        reused if they are the right size; or null
+   * @return the saved image, or null if there is none
+   */
+  public Object getRetainedImage(Object image) {
+    return null;
+  }
+
+  /**
+   * Restores an image saved by getRetainedImage() at the start of the opaque
+   * pass.
+   * 
+   * @param image
+   * @return true if the image was restored
+   */
+  public boolean setRetainedImage(Object image) {
+    return false;
+  }
+
   /**
    * gets g3d slab
    * 
@@ -565,6 +599,16 @@ public class GData implements JmolGraphicsInterface {
   public void beginRendering(M3 stereoRotationMatrix, boolean translucentMode, boolean isImageWrite, boolean renderLow) {
   }
 
+  /**
+   * Turns rendering of the opaque pass in screen bands, in parallel, on or
+   * off, starting with the next frame.
+   * 
+   * @param viewer
+   *        the viewer whose threads render the bands, or null for off
+   */
+  public void setTiledRendering(Viewer viewer) {
+  }
+
   public void endRendering() {
   }
 
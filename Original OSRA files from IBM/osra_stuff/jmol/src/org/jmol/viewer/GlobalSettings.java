@@ -222,6 +222,7 @@ public class GlobalSettings {
       setB("bondModeOr", bondModeOr);
       setB("bondPicking", bondPicking);
       setI("bondRadiusMilliAngstroms", bondRadiusMilliAngstroms);
+      setB("bsptBulkLoad", bsptBulkLoad);
       setF("bondTolerance", bondTolerance);
       setF("cameraDepth", defaultCameraDepth);
       setB("cartoonBaseEdges", cartoonBaseEdges);
@@ -312,6 +313,7 @@ public class GlobalSettings {
       setB("messageStyleChime", messageStyleChime);
       setF("minBondDistance", minBondDistance);
       setI("minPixelSelRadius", minPixelSelRadius);
+      setI("motionFrameMs", motionFrameMs);
       setI("minimizationSteps", minimizationSteps);
       setB("minimizationRefresh", minimizationRefresh);
       setB("minimizationSilent", minimizationSilent);
@@ -326,6 +328,7 @@ public class GlobalSettings {
       //setParamB("navigateSurface", navigateSurface);
       setB("navigationPeriodic", navigationPeriodic);
       setF("navigationSpeed", navigationSpeed);
+      setB("occlusionCulling", occlusionCulling);
       setS("nmrPredictFormat", nmrPredictFormat);
       setS("nmrUrlFormat", nmrUrlFormat);
       setB("partialDots", partialDots);
@@ -346,6 +349,7 @@ public class GlobalSettings {
       setB("rangeSelected", rangeSelected);
       setI("repaintWaitMs", repaintWaitMs);
       setI("ribbonAspectRatio", ribbonAspectRatio);
+      setB("retainedRendering", retainedRendering);
       setB("ribbonBorder", ribbonBorder);
       setB("rocketBarrels", rocketBarrels);
       setB("saveProteinStructureState", saveProteinStructureState);
@@ -389,6 +393,7 @@ public class GlobalSettings {
       setB("testFlag2", testFlag2);
       setB("testFlag3", testFlag3);
       setB("testFlag4", testFlag4);
+      setB("tiledRendering", tiledRendering);
       setB("traceAlpha", traceAlpha);
       setB("translucent", translucent);
       setB("twistedSheets", twistedSheets);
@@ -515,7 +520,8 @@ public class GlobalSettings {
     boolean isosurfaceKey = false;
     boolean isosurfacePropertySmoothing = true;
     int isosurfacePropertySmoothingPower = 7;
-    int platformSpeed = 10; // 1 (slow) to 10 (fast)
+    int platformSpeed = 10; // 1 (slow) to 10 (fast), 0 to adjust during motion
+    int motionFrameMs = 50; // target frame time for platformSpeed 0
     public int repaintWaitMs = 1000;
     boolean showHiddenSelectionHalos = false;
     boolean showKeyStrokes = true;
@@ -529,6 +535,7 @@ public class GlobalSettings {
 
     boolean partialDots = false;
     boolean bondModeOr = false;
+    boolean bsptBulkLoad = false;
     boolean hbondsBackbone = false;
     float hbondsAngleMinimum = 90f;
     float hbondsDistanceMaximum = 3.25f;
@@ -609,6 +616,9 @@ public class GlobalSettings {
     boolean monitorEnergy = false;
     float modulationScale = 1;
     boolean multiProcessor = true;
+    boolean tiledRendering = false;
+    boolean retainedRendering = false;
+    boolean occlusionCulling = false;
     float particleRadius = 20;
     int pickingSpinRate = 10;
     String pickLabel = "";
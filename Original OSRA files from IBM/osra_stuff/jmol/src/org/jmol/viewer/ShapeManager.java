@@ -59,6 +59,12 @@ public class ShapeManager {
   Shape[] shapes;
   public Viewer viewer;
 
+  /**
+   * counts of changes made to each shape through this manager, so that
+   * RepaintManager can tell which shapes are drawn just as in the last frame
+   */
+  private final int[] shapeVersions = new int[JC.SHAPE_MAX];
+
   /**
    * @j2sIgnore
    * 
@@ -89,6 +95,19 @@ public class ShapeManager {
   public Shape[] getShapes() {
     return shapes;
   }
+
+  /**
+   * @param shapeID
+   * @return a number that changes whenever the shape is loaded, released, or
+   *         set through this manager
+   */
+  public int getShapeVersion(int shapeID) {
+    return shapeVersions[shapeID];
+  }
+
+  private void setChanged(int shapeID) {
+    shapeVersions[shapeID]++;
+  }
   
   public Object getShapePropertyIndex(int shapeID, String propertyName, int index) {
     if (shapes == null || shapes[shapeID] == null)
@@ -148,6 +167,7 @@ public class ShapeManager {
       viewer.setShapeErrorState(shapeID, "allocate");
       shape.initializeShape(viewer, gdata, modelSet, shapeID);
       viewer.setShapeErrorState(-1, null);
+      setChanged(shapeID);
       return shapes[shapeID] = shape;
     } catch (Exception e) {
       Logger.errorEx("Could not instantiate shape:" + className, e);
@@ -166,11 +186,14 @@ public class ShapeManager {
   public void releaseShape(int shapeID) {
     if (shapes != null) 
       shapes[shapeID] = null;  
+    setChanged(shapeID);
   }
   
   public void resetShapes() {
     if (!viewer.noGraphicsAllowed())
       shapes = new Shape[JC.SHAPE_MAX];
+    for (int i = 0; i < JC.SHAPE_MAX; i++)
+      setChanged(i);
   }
   
   /**
@@ -192,6 +215,7 @@ public class ShapeManager {
       loadShape(shapeID);
     if (shapes[shapeID] != null) {
       shapes[shapeID].setShapeSizeRD(size, rd, bsSelected);
+      setChanged(shapeID);
     }
     viewer.setShapeErrorState(-1, null);
   }
@@ -215,6 +239,7 @@ public class ShapeManager {
       bsSelected = viewer.getSelectionSet(false);
     viewer.setShapeErrorState(shapeID, "set " + propertyName);
     shapes[shapeID].setProperty(propertyName.intern(), value, bsSelected);
+    setChanged(shapeID);
     viewer.setShapeErrorState(-1, null);
   }
 
@@ -242,13 +267,17 @@ public class ShapeManager {
     if (modifiers != 0
         && viewer.getBondPicking()
         && (map = shapes[JC.SHAPE_STICKS].checkObjectClicked(x, y, modifiers,
-            bsVisible, drawPicking)) != null)
+            bsVisible, drawPicking)) != null) {
+      setChanged(JC.SHAPE_STICKS);
       return map;
+    }
     for (int i = 0; i < clickableMax; i++)
       if ((shape = shapes[hoverable[i]]) != null
           && (map = shape.checkObjectClicked(x, y, modifiers, bsVisible,
-              drawPicking)) != null)
+              drawPicking)) != null) {
+        setChanged(hoverable[i]);
         return map;
+      }
     return null;
   }
  
@@ -257,21 +286,26 @@ public class ShapeManager {
     boolean found = false;
     int n = (iShape > 0 ? iShape + 1 : JC.SHAPE_MAX);
     for (int i = iShape; !found && i < n; ++i)
-      if (shapes[i] != null)
-        found = shapes[i].checkObjectDragged(prevX, prevY, x, y, modifiers,
-            bsVisible);
+      if (shapes[i] != null
+          && (found = shapes[i].checkObjectDragged(prevX, prevY, x, y,
+              modifiers, bsVisible)))
+        setChanged(i);
     return found;
   }
 
   boolean checkObjectHovered(int x, int y, BS bsVisible, boolean checkBonds) {
     Shape shape = shapes[JC.SHAPE_STICKS];
     if (checkBonds && shape != null
-        && shape.checkObjectHovered(x, y, bsVisible))
+        && shape.checkObjectHovered(x, y, bsVisible)) {
+      setChanged(JC.SHAPE_STICKS);
       return true;
+    }
     for (int i = 0; i < hoverable.length; i++) {
       shape = shapes[hoverable[i]];
-      if (shape != null && shape.checkObjectHovered(x, y, bsVisible))
+      if (shape != null && shape.checkObjectHovered(x, y, bsVisible)) {
+        setChanged(hoverable[i]);
         return true;
+      }
     }
     return false;
   }
@@ -290,6 +324,8 @@ public class ShapeManager {
       shapes[JC.SHAPE_ISOSURFACE].setProperty("deleteVdw", null, bs);
     if (shapes[JC.SHAPE_CONTACT] != null)
       shapes[JC.SHAPE_CONTACT].setProperty("deleteVdw", null, bs);
+    setChanged(JC.SHAPE_ISOSURFACE);
+    setChanged(JC.SHAPE_CONTACT);
   }
   
   float getAtomShapeValue(int tok, Group group, int atomIndex) {
@@ -360,6 +396,8 @@ public class ShapeManager {
             loadShape(i);
           shapes[i].merge(newShapes[i]);
         }
+    for (int i = 0; i < JC.SHAPE_MAX; i++)
+      setChanged(i);
   }
 
   void resetBioshapes(BS bsAllAtoms) {
@@ -370,6 +408,7 @@ public class ShapeManager {
         shapes[i].setModelSet(modelSet);
         shapes[i].setShapeSizeRD(0, null, bsAllAtoms);
         shapes[i].setProperty("color", EnumPalette.NONE, bsAllAtoms);
+        setChanged(i);
       }
   }
 
@@ -378,6 +417,7 @@ public class ShapeManager {
       return;
     loadShape(JC.SHAPE_LABELS);
     shapes[JC.SHAPE_LABELS].setProperty("label:"+strLabel, Integer.valueOf(i), null);
+    setChanged(JC.SHAPE_LABELS);
   }
   
   void setModelVisibility() {
@@ -135,6 +135,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
 
 import java.net.URL;
 import java.io.BufferedInputStream;
@@ -183,7 +184,7 @@ import java.io.Reader;
  * ****************************************************************
  */
 
-@J2SIgnoreImport( { Runtime.class })
+@J2SIgnoreImport( { Runtime.class, Executor.class })
 public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer {
 
   @Override
@@ -4417,6 +4418,7 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
   }
 
   private void beginRendering(boolean isDouble, boolean isImageWrite) {
+    gdata.setTiledRendering(global.tiledRendering ? this : null);
     gdata.beginRendering(transformManager.getStereoRotationMatrix(isDouble),
         global.translucent, isImageWrite, !checkMotionRendering(T.translucent));
   }
@@ -5787,6 +5789,8 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       return global.meshScale;
     case T.minpixelselradius:
       return global.minPixelSelRadius;
+    case T.motionframems:
+      return global.motionFrameMs;
     case T.percentvdwatom:
       return global.percentVdwAtom;
     case T.pickingspinrate:
@@ -5846,6 +5850,8 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       return global.axesOrientationRasmol;
     case T.bondmodeor:
       return global.bondModeOr;
+    case T.bsptbulkload:
+      return global.bsptBulkLoad;
     case T.cartoonbaseedges:
       return global.cartoonBaseEdges;
     case T.cartoonsfancy:
@@ -5921,12 +5927,16 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       return global.navigationMode;
     case T.navigationperiodic:
       return global.navigationPeriodic;
+    case T.occlusionculling:
+      return global.occlusionCulling;
     case T.partialdots:
       return global.partialDots;
     case T.pdbsequential:
       return global.pdbSequential;
     case T.preservestate:
       return global.preserveState;
+    case T.retainedrendering:
+      return global.retainedRendering;
     case T.ribbonborder:
       return global.ribbonBorder;
     case T.rocketbarrels:
@@ -5955,6 +5965,8 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       return global.ssbondsBackbone;
     case T.strutsmultiple:
       return global.strutsMultiple;
+    case T.tiledrendering:
+      return global.tiledRendering;
     case T.tracealpha:
       return global.traceAlpha;
     case T.translucent:
@@ -6516,7 +6528,10 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       break;
     case T.platformspeed:
       // 13.3.4
-      global.platformSpeed = Math.min(Math.max(value, 0), 10); // 0 could mean "adjust as needed"
+      global.platformSpeed = Math.min(Math.max(value, 0), 10); // 0 means "adjust as needed"
+      break;
+    case T.motionframems:
+      global.motionFrameMs = Math.max(value, 1);
       break;
     case T.meshscale:
       // 12.3.29
@@ -7009,6 +7024,10 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
     case T.navigationperiodic:
       global.navigationPeriodic = value;
       break;
+    case T.occlusionculling:
+      // takes effect with the next frame
+      global.occlusionCulling = value;
+      break;
     case T.zshade:
       transformManager.setZShadeEnabled(value);
       return;
@@ -7118,6 +7137,14 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       jmolTest();
       global.testFlag4 = value;
       break;
+    case T.tiledrendering:
+      // takes effect with the next frame
+      global.tiledRendering = value;
+      break;
+    case T.retainedrendering:
+      // takes effect with the next frame
+      global.retainedRendering = value;
+      break;
     case T.ribbonborder:
       global.ribbonBorder = value;
       break;
@@ -7185,6 +7212,11 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
       doRepaint = false;
       global.bondModeOr = value;
       break;
+    case T.bsptbulkload:
+      // takes effect the next time the spatial index is built
+      doRepaint = false;
+      global.bsptBulkLoad = value;
+      break;
     case T.zerobasedxyzrasmol:
       doRepaint = false;
       global.zeroBasedXyzRasmol = value;
@@ -9492,6 +9524,65 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
     return executor;
   }
 
+  /**
+   * Runs independent tasks on the parallel-processing executor and waits for
+   * all of them. The tasks are simply run in order in this thread if there is
+   * only one of them, if multiprocessing is off, or if no executor is
+   * available (JavaScript). The first exception thrown by a task is rethrown
+   * once all tasks are done.
+   * 
+   * @param tasks
+   */
+  public void runParallel(Runnable[] tasks) {
+    Executor exec = (tasks.length > 1 && global.multiProcessor ? (Executor) getExecutor()
+        : null);
+    if (exec == null) {
+      for (int i = 0; i < tasks.length; i++)
+        tasks[i].run();
+      return;
+    }
+    final Object lock = new Object();
+    final int[] counter = new int[] { tasks.length };
+    final Throwable[] error = new Throwable[1];
+    for (int i = 0; i < tasks.length; i++) {
+      final Runnable task = tasks[i];
+      exec.execute(new Runnable() {
+        @Override
+        public void run() {
+          Throwable e = null;
+          try {
+            task.run();
+          } catch (Throwable t) {
+            e = t;
+          }
+          synchronized (lock) {
+            if (error[0] == null)
+              error[0] = e;
+            if (--counter[0] == 0)
+              lock.notifyAll();
+          }
+        }
+      });
+    }
+    boolean interrupted = false;
+    synchronized (lock) {
+      while (counter[0] > 0) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          // the tasks still use the caller's data, so keep waiting
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    if (error[0] instanceof Error)
+      throw (Error) error[0];
+    if (error[0] != null)
+      throw (RuntimeException) error[0];
+  }
+
   public boolean displayLoadErrors = true;
 
   public Map<String, Object> getShapeInfo() {
@@ -10405,8 +10496,7 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
    * @return TRUE if allowed
    */
   public boolean checkMotionRendering(int tok) {
-    if (!getInMotion(true) && !transformManager.spinOn
-        && !transformManager.vibrationOn && !animationManager.animationOn)
+    if (!isMotionRendering())
       return true;
     if (global.wireframeRotation)
       return false;
@@ -10434,8 +10524,69 @@ public class Viewer extends JmolViewer implements AtomDataServer, PlatformViewer
     case T.antialiasdisplay:
       n = 8;
       break;
+    case T.point:
+      // a level of the adjusted platformSpeed 0 only; a fixed platformSpeed
+      // hides what it does not render, as it always has
+      if (global.platformSpeed != 0)
+        return false;
+      n = 1;
+      break;
+    }
+    return (global.platformSpeed == 0 && repaintManager != null ? repaintManager
+        .getMotionSpeed() : global.platformSpeed) >= n;
+  }
+
+  /**
+   * @return true if frames are being rendered for mouse movement, spin,
+   *         vibration, or animation
+   */
+  public boolean isMotionRendering() {
+    return (getInMotion(true) || transformManager.spinOn
+        || transformManager.vibrationOn || animationManager.animationOn);
+  }
+
+  /**
+   * @return the target frame time for rendering in motion with platformSpeed 0
+   */
+  public int getMotionFrameMs() {
+    return global.motionFrameMs;
+  }
+
+  /**
+   * @return true if the image of shapes that have not changed may be reused
+   */
+  public boolean isRetainedRendering() {
+    return global.retainedRendering;
+  }
+
+  /**
+   * @return true if atoms and bonds hidden behind nearer atoms may be skipped
+   */
+  public boolean isOcclusionCulling() {
+    return global.occlusionCulling;
+  }
+
+  /**
+   * A hash of the global settings, for RepaintManager to tell whether
+   * anything that might affect rendering has been set since the last frame.
+   * Read-only variables such as _mouseX, which change all the time, are left
+   * out; whether the selection is being shown for moveSelected is put in.
+   * 
+   * @return sum of hash codes of the settings
+   */
+  public int getSettingsHash() {
+    return getHash(global.htNonbooleanParameterValues)
+        + getHash(global.htBooleanParameterFlags) + (showSelected ? 1 : 0);
+  }
+
+  private static int getHash(Map<String, ?> map) {
+    int hash = 0;
+    synchronized (map) {
+      for (Entry<String, ?> e : map.entrySet())
+        if (!e.getKey().startsWith("_"))
+          hash += e.hashCode();
     }
-    return global.platformSpeed >= n;
+    return hash;
   }
 
   // ///////////////////////////////////////////////////////////////
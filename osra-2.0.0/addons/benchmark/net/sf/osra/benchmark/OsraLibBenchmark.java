@@ -0,0 +1,152 @@
+package net.sf.osra.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.osra.OsraContext;
+import net.sf.osra.OsraLib;
+import net.sf.osra.OsraOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Java bridge over the images found in the directory given by <code>osra.benchmark.images</code> system
+ * property (<code>test</code> by default). Every invocation processes the next image of the set, so the scores are per
+ * image. Run with <code>-t N</code> to measure the throughput across threads and with <code>-prof gc</code> to see the
+ * allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class OsraLibBenchmark {
+
+	private static final List<String> IMAGE_EXTENSIONS = Arrays.asList("png", "gif", "jpg", "jpeg", "tif", "tiff", "bmp");
+
+	/**
+	 * Forced resolution, dpi; 0 means that all resolutions are tried.
+	 */
+	@Param({ "0", "150", "300" })
+	public int inputResolution;
+
+	@Param({ "false", "true" })
+	public boolean adaptiveOption;
+
+	@Param({ "smi", "sdf" })
+	public String format;
+
+	private byte[][] images;
+
+	private OsraOptions options;
+
+	private OsraContext context;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final File directory = new File(System.getProperty("osra.benchmark.images", "test"));
+		final List<byte[]> list = new ArrayList<byte[]>();
+		final File[] files = directory.listFiles();
+
+		if (files != null) {
+			Arrays.sort(files);
+
+			for (File file : files) {
+				final String name = file.getName();
+				final String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+
+				if (file.isFile() && IMAGE_EXTENSIONS.contains(extension)) {
+					list.add(Files.readAllBytes(file.toPath()));
+				}
+			}
+		}
+
+		if (list.isEmpty()) {
+			throw new IllegalStateException("No images found in " + directory.getAbsolutePath());
+		}
+
+		images = list.toArray(new byte[list.size()][]);
+
+		options = new OsraOptions();
+		options.setInputResolution(inputResolution);
+		options.setAdaptiveOption(adaptiveOption);
+		options.setFormat(format);
+
+		context = new OsraContext();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * Cycles over the images independently in every benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class ImageCursor {
+
+		private int index;
+
+		byte[] next(byte[][] images) {
+			final byte[] image = images[index];
+			index = (index + 1) % images.length;
+			return image;
+		}
+	}
+
+	/**
+	 * Legacy call, which loads dictionaries and formats text output for every image.
+	 */
+	@Benchmark
+	public String processImage(ImageCursor cursor) {
+		final StringWriter writer = new StringWriter();
+
+		OsraLib.processImage(cursor.next(images), writer, options.getRotate(), options.isInvert(),
+				options.getInputResolution(), options.getThreshold(), options.getDoUnpaper(), options.isJaggy(),
+				options.isAdaptiveOption(), options.getFormat(), options.getEmbeddedFormat(), options.isOutputConfidence(),
+				options.isShowResolutionGuess(), options.isShowPage(), options.isOutputCoordinates(),
+				options.isOutputAvgBondLength());
+
+		return writer.toString();
+	}
+
+	/**
+	 * Text output with dictionaries loaded once per trial.
+	 */
+	@Benchmark
+	public String processImageWithContext(ImageCursor cursor) {
+		final StringWriter writer = new StringWriter();
+
+		context.processImage(cursor.next(images), writer, options);
+
+		return writer.toString();
+	}
+
+	/**
+	 * Structured output with dictionaries loaded once per trial.
+	 */
+	@Benchmark
+	public Object recognize(ImageCursor cursor) {
+		return context.recognize(cursor.next(images), options);
+	}
+}
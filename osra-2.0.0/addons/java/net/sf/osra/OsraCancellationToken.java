@@ -0,0 +1,70 @@
+package net.sf.osra;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allows to stop the recognition before it completes, either explicitly by {@link #cancel()} from another thread or when
+ * the deadline has passed. The native library checks the token before each page, resolution and box, so the call returns
+ * as soon as the current box is done, reporting the structures found so far.
+ * <p>
+ * The token can be passed to several calls: once cancelled or expired, it stops all of them.
+ *
+ * @see OsraContext#recognize(byte[], OsraOptions, OsraCancellationToken)
+ */
+public class OsraCancellationToken {
+
+	/**
+	 * The cancellation flag, which is read by the native code in place. The field name is read by the native code, so it
+	 * should not be renamed.
+	 */
+	private final ByteBuffer flag = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+
+	/**
+	 * The deadline as {@link System#nanoTime()} value or 0 if there is no deadline.
+	 */
+	private final long deadline;
+
+	/**
+	 * Creates the token without deadline, which can only be cancelled explicitly.
+	 */
+	public OsraCancellationToken() {
+		this.deadline = 0;
+	}
+
+	/**
+	 * Creates the token, which expires after the given time budget.
+	 *
+	 * @param timeout
+	 *            the time budget, counting from now
+	 */
+	public OsraCancellationToken(long timeout, TimeUnit unit) {
+		// Avoid the reserved 0 value:
+		this.deadline = (System.nanoTime() + unit.toNanos(timeout)) | 1;
+	}
+
+	/**
+	 * Stops the calls, which use this token.
+	 */
+	public void cancel() {
+		flag.putInt(0, 1);
+	}
+
+	/**
+	 * @return <code>true</code>, if the token has been cancelled or the deadline has passed; when a call returns with such
+	 *         token, its results may be incomplete
+	 */
+	public boolean isCancelled() {
+		return flag.getInt(0) != 0 || (deadline != 0 && System.nanoTime() - deadline >= 0);
+	}
+
+	/**
+	 * Called by the native code when the processing starts.
+	 *
+	 * @return the time left until the deadline, nanoseconds, at least 1, or 0 if there is no deadline
+	 */
+	private long getTimeoutNanos() {
+		return deadline == 0 ? 0 : Math.max(1, deadline - System.nanoTime());
+	}
+}
@@ -0,0 +1,485 @@
+package net.sf.osra;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-lived native OSRA context. The spelling and superatom dictionaries are loaded and the OpenBabel engine is checked
+ * once, when the context is created, and then reused by every {@link #processImage(byte[], Writer, OsraOptions)} call.
+ * <p>
+ * The native context is not modified by processing, so one instance can be shared between threads. It should be
+ * {@link #close() closed} when it is no longer used, but not while some thread is still processing an image with it.
+ */
+public class OsraContext implements Closeable {
+
+	/**
+	 * The value of <code>pageIndex</code> to process all pages at once.
+	 */
+	private static final int ALL_PAGES = -1;
+
+	/**
+	 * The error code returned by the native library, when the requested page does not exist.
+	 */
+	private static final int ERROR_PAGE_OUT_OF_RANGE = -7;
+
+	/**
+	 * The value returned by the native library, when processing was stopped by {@link OsraCancellationToken}. The
+	 * structures found before that are reported.
+	 */
+	public static final int PROCESSING_CANCELLED = 1;
+
+	private static final OsraStageStatistics STATISTICS = OsraStageStatistics.getInstance();
+
+	private long handle;
+
+	static {
+		// The native library is loaded by OsraLib static initializer:
+		try {
+			Class.forName(OsraLib.class.getName(), true, OsraContext.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates the context with dictionaries looked up in default locations.
+	 */
+	public OsraContext() {
+		this(".", "", "");
+	}
+
+	/**
+	 * Creates the context with custom dictionaries.
+	 *
+	 * @param osraDir
+	 *            the directory to look for dictionaries in, if they are not found in default location
+	 * @param spellingFile
+	 *            custom spelling dictionary file or empty string
+	 * @param superatomFile
+	 *            custom superatom dictionary file or empty string
+	 * @throws IllegalStateException
+	 *             if dictionaries cannot be loaded or OpenBabel engine is not functional
+	 */
+	public OsraContext(String osraDir, String spellingFile, String superatomFile) {
+		handle = create(osraDir, spellingFile, superatomFile);
+
+		if (handle == 0) {
+			throw new IllegalStateException("Failed to create OSRA context: check that spelling and superatom files are available in "
+					+ osraDir);
+		}
+	}
+
+	/**
+	 * Process the given image within this context.
+	 *
+	 * @param imageData
+	 *            the image binary data
+	 * @param outputStructureWriter
+	 *            the writer to output the found structures in given format
+	 * @param options
+	 *            processing options
+	 * @return 0, if the call succeeded or negative value in case of error
+	 * @see OsraLib#processImage(byte[], Writer, int, boolean, int, double, int, boolean, boolean, String, String, boolean,
+	 *      boolean, boolean, boolean, boolean)
+	 */
+	public int processImage(byte[] imageData, Writer outputStructureWriter, OsraOptions options) {
+		return process(imageData, outputStructureWriter, options, null, ALL_PAGES, null, null);
+	}
+
+	/**
+	 * Process the given image within this context and report the time spent in each processing stage.
+	 *
+	 * @param timings
+	 *            receives the stage timings of this call
+	 * @see #processImage(byte[], Writer, OsraOptions)
+	 */
+	public int processImage(byte[] imageData, Writer outputStructureWriter, OsraOptions options, OsraTimings timings) {
+		return process(imageData, outputStructureWriter, options, null, ALL_PAGES, timings, null);
+	}
+
+	/**
+	 * Process the given image within this context, until it is done or the token is cancelled.
+	 *
+	 * @param cancellation
+	 *            the token to stop processing
+	 * @return 0, if the call succeeded, {@link #PROCESSING_CANCELLED}, if the call was cancelled and only the structures
+	 *         found so far were written, or negative value in case of error
+	 * @see #processImage(byte[], Writer, OsraOptions)
+	 */
+	public int processImage(byte[] imageData, Writer outputStructureWriter, OsraOptions options,
+			OsraCancellationToken cancellation) {
+		return process(imageData, outputStructureWriter, options, null, ALL_PAGES, null, cancellation);
+	}
+
+	/**
+	 * Process the image stored in the given buffer between its position and limit. Direct buffers are passed to the native
+	 * code without copying; heap buffers are copied into a byte array first.
+	 *
+	 * @param imageData
+	 *            the image binary data
+	 * @param outputStructureWriter
+	 *            the writer to output the found structures in given format
+	 * @param options
+	 *            processing options
+	 * @return 0, if the call succeeded or negative value in case of error
+	 */
+	public int processImage(ByteBuffer imageData, Writer outputStructureWriter, OsraOptions options) {
+		return process(imageData, outputStructureWriter, options, null, ALL_PAGES, null, null);
+	}
+
+	/**
+	 * Process the image stored in the given buffer and report the time spent in each processing stage.
+	 *
+	 * @param timings
+	 *            receives the stage timings of this call
+	 * @see #processImage(ByteBuffer, Writer, OsraOptions)
+	 */
+	public int processImage(ByteBuffer imageData, Writer outputStructureWriter, OsraOptions options, OsraTimings timings) {
+		return process(imageData, outputStructureWriter, options, null, ALL_PAGES, timings, null);
+	}
+
+	/**
+	 * Process the image stored in the given buffer, until it is done or the token is cancelled.
+	 *
+	 * @see #processImage(byte[], Writer, OsraOptions, OsraCancellationToken)
+	 * @see #processImage(ByteBuffer, Writer, OsraOptions)
+	 */
+	public int processImage(ByteBuffer imageData, Writer outputStructureWriter, OsraOptions options,
+			OsraCancellationToken cancellation) {
+		return process(imageData, outputStructureWriter, options, null, ALL_PAGES, null, cancellation);
+	}
+
+	/**
+	 * Process the image from the given file. The file is memory-mapped, so its content is not copied to Java heap.
+	 *
+	 * @param imageFile
+	 *            the image file
+	 * @param outputStructureWriter
+	 *            the writer to output the found structures in given format
+	 * @param options
+	 *            processing options
+	 * @return 0, if the call succeeded or negative value in case of error
+	 * @throws IOException
+	 *             if the file cannot be read or is larger than 2GB
+	 */
+	public int processImage(Path imageFile, Writer outputStructureWriter, OsraOptions options) throws IOException {
+		return process(map(imageFile), outputStructureWriter, options, null, ALL_PAGES, null, null);
+	}
+
+	/**
+	 * Recognize the structures in the given image within this context. Unlike
+	 * {@link #processImage(byte[], Writer, OsraOptions)} the structures are returned together with their confidence, page,
+	 * coordinates, average bond length and resolution as filled by the native code, so there is no need to request and
+	 * parse these values from the text output. Reactions are not reported.
+	 *
+	 * @param imageData
+	 *            the image binary data
+	 * @param options
+	 *            processing options
+	 * @return the list of recognized structures
+	 * @throws OsraException
+	 *             if the native library returned an error code
+	 */
+	public List<OsraStructure> recognize(byte[] imageData, OsraOptions options) {
+		return recognize(imageData, options, null, null);
+	}
+
+	/**
+	 * Recognize the structures in the given image and report the time spent in each processing stage.
+	 *
+	 * @param timings
+	 *            receives the stage timings of this call
+	 * @see #recognize(byte[], OsraOptions)
+	 */
+	public List<OsraStructure> recognize(byte[] imageData, OsraOptions options, OsraTimings timings) {
+		return recognize(imageData, options, timings, null);
+	}
+
+	/**
+	 * Recognize the structures in the given image, until it is done or the token is cancelled. If
+	 * {@link OsraCancellationToken#isCancelled()} is <code>true</code> after the call, the list may be incomplete.
+	 *
+	 * @param cancellation
+	 *            the token to stop processing
+	 * @see #recognize(byte[], OsraOptions)
+	 */
+	public List<OsraStructure> recognize(byte[] imageData, OsraOptions options, OsraCancellationToken cancellation) {
+		return recognize(imageData, options, null, cancellation);
+	}
+
+	/**
+	 * Recognize the structures in the given image, until it is done or the token is cancelled, and report the time spent
+	 * in each processing stage.
+	 *
+	 * @param timings
+	 *            receives the stage timings of this call or <code>null</code>
+	 * @param cancellation
+	 *            the token to stop processing or <code>null</code>
+	 * @see #recognize(byte[], OsraOptions)
+	 */
+	public List<OsraStructure> recognize(byte[] imageData, OsraOptions options, OsraTimings timings,
+			OsraCancellationToken cancellation) {
+		final List<OsraStructure> structures = new ArrayList<OsraStructure>();
+
+		check(process(imageData, null, options, structures, ALL_PAGES, timings, cancellation));
+
+		return structures;
+	}
+
+	/**
+	 * Recognize the structures in the image stored in the given buffer between its position and limit.
+	 *
+	 * @see #recognize(byte[], OsraOptions)
+	 * @see #processImage(ByteBuffer, Writer, OsraOptions)
+	 */
+	public List<OsraStructure> recognize(ByteBuffer imageData, OsraOptions options) {
+		return recognize(imageData, options, null, null);
+	}
+
+	/**
+	 * Recognize the structures in the image stored in the given buffer and report the time spent in each processing stage.
+	 *
+	 * @param timings
+	 *            receives the stage timings of this call
+	 * @see #recognize(ByteBuffer, OsraOptions)
+	 */
+	public List<OsraStructure> recognize(ByteBuffer imageData, OsraOptions options, OsraTimings timings) {
+		return recognize(imageData, options, timings, null);
+	}
+
+	/**
+	 * Recognize the structures in the image stored in the given buffer, until it is done or the token is cancelled.
+	 *
+	 * @see #recognize(byte[], OsraOptions, OsraCancellationToken)
+	 * @see #recognize(ByteBuffer, OsraOptions)
+	 */
+	public List<OsraStructure> recognize(ByteBuffer imageData, OsraOptions options, OsraCancellationToken cancellation) {
+		return recognize(imageData, options, null, cancellation);
+	}
+
+	/**
+	 * Recognize the structures in the image stored in the given buffer, until it is done or the token is cancelled, and
+	 * report the time spent in each processing stage.
+	 *
+	 * @see #recognize(byte[], OsraOptions, OsraTimings, OsraCancellationToken)
+	 * @see #recognize(ByteBuffer, OsraOptions)
+	 */
+	public List<OsraStructure> recognize(ByteBuffer imageData, OsraOptions options, OsraTimings timings,
+			OsraCancellationToken cancellation) {
+		final List<OsraStructure> structures = new ArrayList<OsraStructure>();
+
+		check(process(imageData, null, options, structures, ALL_PAGES, timings, cancellation));
+
+		return structures;
+	}
+
+	/**
+	 * Recognize the structures in the image from the given file.
+	 *
+	 * @see #recognize(byte[], OsraOptions)
+	 * @see #processImage(Path, Writer, OsraOptions)
+	 */
+	public List<OsraStructure> recognize(Path imageFile, OsraOptions options) throws IOException {
+		return recognize(map(imageFile), options);
+	}
+
+	/**
+	 * Recognize the structures in the multi-page document (PDF, PS, multi-page TIFF) page by page. The listener is notified
+	 * as soon as each page is done, and only one page is rasterized at a time, so the memory is bounded by the size of the
+	 * document plus one page. Unlike {@link #recognize(ByteBuffer, OsraOptions)} the best resolution is chosen for each page
+	 * separately.
+	 *
+	 * @param document
+	 *            the document binary data between the buffer position and limit; direct buffers are not copied
+	 * @param options
+	 *            processing options
+	 * @param listener
+	 *            receives the structures of every page
+	 * @return the number of processed pages
+	 * @throws OsraException
+	 *             if the native library returned an error code for some page
+	 */
+	public int recognizePages(ByteBuffer document, OsraOptions options, OsraPageListener listener) {
+		return recognizePages(document, options, listener, null);
+	}
+
+	/**
+	 * Recognize the structures in the multi-page document page by page, until it is done or the token is cancelled. The
+	 * page, which was being processed when the token was cancelled, is reported with the structures found so far; the
+	 * rest of the pages are not processed.
+	 *
+	 * @param cancellation
+	 *            the token to stop processing
+	 * @see #recognizePages(ByteBuffer, OsraOptions, OsraPageListener)
+	 */
+	public int recognizePages(ByteBuffer document, OsraOptions options, OsraPageListener listener,
+			OsraCancellationToken cancellation) {
+		if (!document.isDirect()) {
+			final ByteBuffer copy = ByteBuffer.allocateDirect(document.remaining());
+			copy.put(document.duplicate()).flip();
+			document = copy;
+		}
+
+		int pageIndex = 0;
+
+		for (;; pageIndex++) {
+			final List<OsraStructure> structures = new ArrayList<OsraStructure>();
+			final int result = process(document, null, options, structures, pageIndex, null, cancellation);
+
+			if (result == ERROR_PAGE_OUT_OF_RANGE) {
+				break;
+			}
+
+			check(result);
+
+			if (!listener.pageRecognized(pageIndex + 1, structures) || result == PROCESSING_CANCELLED) {
+				return pageIndex + 1;
+			}
+		}
+
+		return pageIndex;
+	}
+
+	/**
+	 * Recognize the structures in the multi-page document from the given file page by page. The file is memory-mapped.
+	 *
+	 * @see #recognizePages(ByteBuffer, OsraOptions, OsraPageListener)
+	 */
+	public int recognizePages(Path document, OsraOptions options, OsraPageListener listener) throws IOException {
+		return recognizePages(map(document), options, listener);
+	}
+
+	/**
+	 * Recognize the structures in the multi-page document from the given stream page by page. The stream is read to the end
+	 * into a temporary file (the whole document is needed to rasterize PDF pages), which is memory-mapped, so the document
+	 * is not kept in memory. The stream is not closed.
+	 *
+	 * @see #recognizePages(ByteBuffer, OsraOptions, OsraPageListener)
+	 */
+	public int recognizePages(InputStream document, OsraOptions options, OsraPageListener listener) throws IOException {
+		final Path spool = Files.createTempFile("osra", ".tmp");
+
+		try {
+			Files.copy(document, spool, StandardCopyOption.REPLACE_EXISTING);
+
+			return recognizePages(map(spool), options, listener);
+		} finally {
+			try {
+				Files.delete(spool);
+			} catch (IOException e) {
+				// Some platforms do not allow to delete the file while it is still mapped:
+				spool.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Every call is measured and added to {@link OsraStageStatistics}, even if the caller does not ask for the timings.
+	 */
+	private int process(byte[] imageData, Writer outputStructureWriter, OsraOptions options,
+			List<OsraStructure> structures, int pageIndex, OsraTimings timings, OsraCancellationToken cancellation) {
+		if (timings == null) {
+			timings = new OsraTimings();
+		}
+
+		final int result = processImage(getHandle(), imageData, outputStructureWriter, options, structures, pageIndex,
+				timings, cancellation);
+
+		STATISTICS.add(timings, result);
+
+		return result;
+	}
+
+	private int process(ByteBuffer imageData, Writer outputStructureWriter, OsraOptions options,
+			List<OsraStructure> structures, int pageIndex, OsraTimings timings, OsraCancellationToken cancellation) {
+		if (!imageData.isDirect()) {
+			final byte[] data = new byte[imageData.remaining()];
+			imageData.duplicate().get(data);
+
+			return process(data, outputStructureWriter, options, structures, pageIndex, timings, cancellation);
+		}
+
+		if (timings == null) {
+			timings = new OsraTimings();
+		}
+
+		final int result = processBuffer(getHandle(), imageData, imageData.position(), imageData.remaining(),
+				outputStructureWriter, options, structures, pageIndex, timings, cancellation);
+
+		STATISTICS.add(timings, result);
+
+		return result;
+	}
+
+	private static void check(int result) {
+		if (result < 0) {
+			throw new OsraException(result);
+		}
+	}
+
+	private static ByteBuffer map(Path imageFile) throws IOException {
+		final FileChannel channel = FileChannel.open(imageFile, StandardOpenOption.READ);
+		final MappedByteBuffer imageData;
+
+		try {
+			final long size = channel.size();
+
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Image file " + imageFile + " is too large: " + size + " bytes");
+			}
+
+			// The mapping stays valid after the channel is closed:
+			imageData = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			channel.close();
+		}
+
+		return imageData;
+	}
+
+	/**
+	 * Releases the native context. Subsequent calls have no effect.
+	 */
+	public synchronized void close() {
+		if (handle != 0) {
+			destroy(handle);
+			handle = 0;
+		}
+	}
+
+	private synchronized long getHandle() {
+		if (handle == 0) {
+			throw new IllegalStateException("OSRA context is closed");
+		}
+
+		return handle;
+	}
+
+	private static native long create(String osraDir, String spellingFile, String superatomFile);
+
+	private static native void destroy(long handle);
+
+	/**
+	 * Any of <code>outputStructureWriter</code>, <code>structures</code>, <code>timings</code> and
+	 * <code>cancellation</code> may be <code>null</code>. If <code>pageIndex</code> is not negative, only this page of the
+	 * document is processed.
+	 */
+	private static native int processImage(long handle, byte[] imageData, Writer outputStructureWriter,
+			OsraOptions options, List<OsraStructure> structures, int pageIndex, OsraTimings timings,
+			OsraCancellationToken cancellation);
+
+	private static native int processBuffer(long handle, ByteBuffer imageData, int offset, int length,
+			Writer outputStructureWriter, OsraOptions options, List<OsraStructure> structures, int pageIndex,
+			OsraTimings timings, OsraCancellationToken cancellation);
+}
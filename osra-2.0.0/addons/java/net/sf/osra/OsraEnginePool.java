@@ -0,0 +1,423 @@
+package net.sf.osra;
+
+import java.io.Closeable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Pool of OSRA engines for multi-core recognition. Each engine is a worker thread, which owns its own
+ * {@link OsraContext} and takes the images from the common bounded queue. When the queue is full,
+ * {@link #submit(byte[], Writer, OsraOptions)} blocks the caller, so producers cannot run ahead of the engines, while
+ * {@link #recognize(byte[], OsraOptions)} never blocks and rejects the image instead.
+ * <p>
+ * Note that OCR, OpenBabel conversion and anisotropic smoothing are guarded by a process-wide lock inside the native
+ * library, so these stages are still serialised between engines, while image decoding, binarization, segmentation and
+ * vectorization run in parallel.
+ */
+public class OsraEnginePool implements Closeable {
+
+	private final BlockingQueue<FutureTask<?>> queue;
+
+	private final Engine[] engines;
+
+	private ScheduledExecutorService timer;
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates the pool with dictionaries looked up in default locations.
+	 *
+	 * @param engineCount
+	 *            number of engines (worker threads), usually the number of available processors
+	 * @param queueCapacity
+	 *            maximum number of images waiting for an engine
+	 */
+	public OsraEnginePool(int engineCount, int queueCapacity) {
+		this(engineCount, queueCapacity, ".", "", "");
+	}
+
+	/**
+	 * Creates the pool with custom dictionaries.
+	 *
+	 * @param engineCount
+	 *            number of engines (worker threads), usually the number of available processors
+	 * @param queueCapacity
+	 *            maximum number of images waiting for an engine
+	 * @see OsraContext#OsraContext(String, String, String)
+	 */
+	public OsraEnginePool(int engineCount, int queueCapacity, String osraDir, String spellingFile, String superatomFile) {
+		if (engineCount <= 0) {
+			throw new IllegalArgumentException("Number of engines should be positive: " + engineCount);
+		}
+
+		queue = new ArrayBlockingQueue<FutureTask<?>>(queueCapacity);
+		engines = new Engine[engineCount];
+
+		try {
+			for (int i = 0; i < engineCount; i++) {
+				engines[i] = new Engine("osra-engine-" + i, new OsraContext(osraDir, spellingFile, superatomFile));
+			}
+		} catch (RuntimeException e) {
+			for (Engine engine : engines) {
+				if (engine != null) {
+					engine.context.close();
+				}
+			}
+
+			throw e;
+		}
+
+		for (Engine engine : engines) {
+			engine.start();
+		}
+	}
+
+	/**
+	 * Queues the given image for processing, waiting if the queue is full.
+	 *
+	 * @return the future result of {@link OsraContext#processImage(byte[], Writer, OsraOptions)}
+	 * @throws RejectedExecutionException
+	 *             if the pool is closed
+	 */
+	public Future<Integer> submit(byte[] imageData, Writer outputStructureWriter, OsraOptions options)
+			throws InterruptedException {
+		final FutureTask<Integer> task = newTask(imageData, outputStructureWriter, options);
+
+		queue.put(task);
+		checkQueued(task);
+
+		return task;
+	}
+
+	/**
+	 * Queues the given image for processing, waiting up to the given time if the queue is full.
+	 *
+	 * @return the future result of {@link OsraContext#processImage(byte[], Writer, OsraOptions)} or <code>null</code>, if
+	 *         the queue remained full
+	 * @throws RejectedExecutionException
+	 *             if the pool is closed
+	 */
+	public Future<Integer> offer(byte[] imageData, Writer outputStructureWriter, OsraOptions options, long timeout,
+			TimeUnit unit) throws InterruptedException {
+		final FutureTask<Integer> task = newTask(imageData, outputStructureWriter, options);
+
+		if (!queue.offer(task, timeout, unit)) {
+			return null;
+		}
+
+		checkQueued(task);
+
+		return task;
+	}
+
+	/**
+	 * Queues the given image for recognition without blocking the caller.
+	 *
+	 * @return the future list of structures as returned by {@link OsraContext#recognize(byte[], OsraOptions)}; it is
+	 *         completed exceptionally with {@link RejectedExecutionException} if the queue is full
+	 * @see #recognize(byte[], OsraOptions, long, TimeUnit)
+	 */
+	public CompletableFuture<List<OsraStructure>> recognize(byte[] imageData, OsraOptions options) {
+		return recognize(imageData, options, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queues the given image for recognition without blocking the caller. Cancelling the returned future or exceeding the
+	 * timeout removes the image from the queue, if it has not been taken by an engine yet, or stops its processing with
+	 * {@link OsraCancellationToken} otherwise, so that the engine is released for the next image.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait for the result, counting from this call, or 0 to wait forever
+	 * @return the future list of structures as returned by {@link OsraContext#recognize(byte[], OsraOptions)}; it is
+	 *         completed exceptionally with {@link RejectedExecutionException} if the queue is full and with
+	 *         {@link TimeoutException} if the timeout has expired
+	 */
+	public CompletableFuture<List<OsraStructure>> recognize(final byte[] imageData, final OsraOptions options,
+			long timeout, TimeUnit unit) {
+		final CompletableFuture<List<OsraStructure>> result = new CompletableFuture<List<OsraStructure>>();
+		final OsraCancellationToken cancellation = new OsraCancellationToken();
+
+		final FutureTask<List<OsraStructure>> task = new FutureTask<List<OsraStructure>>(
+				new EngineCallable<List<OsraStructure>>(imageData.length) {
+					@Override
+					List<OsraStructure> call(OsraContext context) {
+						return context.recognize(imageData, options, cancellation);
+					}
+				}) {
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					result.cancel(false);
+					return;
+				}
+
+				try {
+					result.complete(get());
+				} catch (ExecutionException e) {
+					result.completeExceptionally(e.getCause());
+				} catch (InterruptedException e) {
+					// Cannot happen, as the task is done.
+					result.completeExceptionally(e);
+				}
+			}
+		};
+
+		checkOpen();
+
+		if (!queue.offer(task)) {
+			result.completeExceptionally(new RejectedExecutionException("OSRA engine queue is full: " + queue.size()));
+			return result;
+		}
+
+		if (closed && queue.remove(task)) {
+			result.completeExceptionally(new RejectedExecutionException("OSRA engine pool is closed"));
+			task.cancel(false);
+			return result;
+		}
+
+		final ScheduledFuture<?> timeoutTask = timeout > 0 ? getTimer().schedule(new Runnable() {
+			public void run() {
+				result.completeExceptionally(new TimeoutException("OSRA recognition has not completed in time"));
+			}
+		}, timeout, unit) : null;
+
+		result.whenComplete(new BiConsumer<List<OsraStructure>, Throwable>() {
+			public void accept(List<OsraStructure> structures, Throwable e) {
+				if (timeoutTask != null) {
+					timeoutTask.cancel(false);
+				}
+
+				// Cancelled or timed out by the caller: the engine does not need to pick up or finish the image.
+				if (e != null) {
+					if (queue.remove(task)) {
+						task.cancel(false);
+					} else {
+						cancellation.cancel();
+					}
+				}
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * @return number of engines in the pool
+	 */
+	public int getEngineCount() {
+		return engines.length;
+	}
+
+	/**
+	 * @return number of images waiting for an engine
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the statistics snapshot for every engine
+	 */
+	public List<OsraEngineStatistics> getStatistics() {
+		final List<OsraEngineStatistics> statistics = new ArrayList<OsraEngineStatistics>(engines.length);
+
+		for (Engine engine : engines) {
+			statistics.add(engine.getStatistics());
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * Stops accepting new images, waits for the queued images to be processed and releases the engines.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		boolean interrupted = false;
+
+		for (Engine engine : engines) {
+			engine.interrupt();
+		}
+
+		for (Engine engine : engines) {
+			while (engine.isAlive()) {
+				try {
+					engine.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+
+		// The images, queued concurrently with closing, will never be processed:
+		for (FutureTask<?> task; (task = queue.poll()) != null;) {
+			task.cancel(false);
+		}
+
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new RejectedExecutionException("OSRA engine pool is closed");
+		}
+	}
+
+	/**
+	 * Takes back the task, which has been queued after {@link #close()} has drained the queue, as no engine would ever
+	 * take it. The queue lock orders the enqueueing after the draining, so <code>closed</code> is seen here.
+	 *
+	 * @throws RejectedExecutionException
+	 *             if the task has been taken back
+	 */
+	private void checkQueued(FutureTask<?> task) {
+		if (closed && queue.remove(task)) {
+			task.cancel(false);
+			throw new RejectedExecutionException("OSRA engine pool is closed");
+		}
+	}
+
+	private synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "osra-engine-timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+			executor.setRemoveOnCancelPolicy(true);
+			timer = executor;
+		}
+
+		return timer;
+	}
+
+	private FutureTask<Integer> newTask(final byte[] imageData, final Writer outputStructureWriter,
+			final OsraOptions options) {
+		checkOpen();
+
+		return new FutureTask<Integer>(new EngineCallable<Integer>(imageData.length) {
+			@Override
+			Integer call(OsraContext context) {
+				return Integer.valueOf(context.processImage(imageData, outputStructureWriter, options));
+			}
+		});
+	}
+
+	/**
+	 * The job, which is run by an engine with its context.
+	 */
+	private static abstract class EngineCallable<T> implements Callable<T> {
+
+		private final int length;
+
+		EngineCallable(int length) {
+			this.length = length;
+		}
+
+		abstract T call(OsraContext context);
+
+		public T call() {
+			return ((Engine) Thread.currentThread()).process(length, this);
+		}
+	}
+
+	private class Engine extends Thread {
+
+		final OsraContext context;
+
+		private long processed;
+
+		private long failed;
+
+		private long bytes;
+
+		private long busyNanos;
+
+		Engine(String name, OsraContext context) {
+			super(name);
+			setDaemon(true);
+			this.context = context;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					FutureTask<?> task;
+
+					try {
+						task = closed ? queue.poll() : queue.take();
+					} catch (InterruptedException e) {
+						// Woken up by close(): process what is left in the queue.
+						continue;
+					}
+
+					if (task == null) {
+						break;
+					}
+
+					task.run();
+				}
+			} finally {
+				context.close();
+			}
+		}
+
+		<T> T process(int length, EngineCallable<T> callable) {
+			final long start = System.nanoTime();
+			boolean success = false;
+
+			try {
+				final T result = callable.call(context);
+				success = !(result instanceof Integer && ((Integer) result).intValue() < 0);
+				return result;
+			} finally {
+				synchronized (this) {
+					processed++;
+					bytes += length;
+					busyNanos += System.nanoTime() - start;
+
+					if (!success) {
+						failed++;
+					}
+				}
+			}
+		}
+
+		synchronized OsraEngineStatistics getStatistics() {
+			return new OsraEngineStatistics(getName(), processed, failed, bytes, busyNanos);
+		}
+	}
+}
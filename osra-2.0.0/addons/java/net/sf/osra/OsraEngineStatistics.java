@@ -0,0 +1,66 @@
+package net.sf.osra;
+
+/**
+ * Snapshot of the statistics of one engine of {@link OsraEnginePool}.
+ */
+public class OsraEngineStatistics {
+
+	private final String name;
+
+	private final long processed;
+
+	private final long failed;
+
+	private final long bytes;
+
+	private final long busyNanos;
+
+	OsraEngineStatistics(String name, long processed, long failed, long bytes, long busyNanos) {
+		this.name = name;
+		this.processed = processed;
+		this.failed = failed;
+		this.bytes = bytes;
+		this.busyNanos = busyNanos;
+	}
+
+	/**
+	 * @return the name of the engine worker thread
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of images processed by the engine, including failed ones
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * @return number of images for which the engine returned an error code or threw an exception
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return total size of the processed images, bytes
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return total time the engine spent processing images, nanoseconds
+	 */
+	public long getBusyNanos() {
+		return busyNanos;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": processed=" + processed + " failed=" + failed + " bytes=" + bytes + " busy=" + busyNanos / 1000000
+				+ "ms";
+	}
+}
@@ -0,0 +1,23 @@
+package net.sf.osra;
+
+/**
+ * Thrown when OSRA library returns an error code.
+ */
+public class OsraException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int errorCode;
+
+	public OsraException(int errorCode) {
+		super("OSRA processing failed with error code " + errorCode);
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * @return the negative value returned by the native library
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+}
@@ -3,6 +3,11 @@ package net.sf.osra;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.PropertyResourceBundle;
 
 import net.sf.jnati.NativeCodeException;
@@ -63,6 +68,175 @@ public class OsraLib {
 					      boolean outputCoordinates, 
 					      boolean outputAvgBondLength);
 
+	/**
+	 * Process the given images with OSRA library. Unlike
+	 * {@link #processImage(byte[], Writer, int, boolean, int, double, int, boolean, boolean, String, String, boolean, boolean, boolean, boolean, boolean)}
+	 * the dictionaries are loaded only once for the whole batch, see {@link OsraContext}.
+	 * 
+	 * @param imageData
+	 *            the list of image binary data
+	 * @param options
+	 *            processing options, common for all images
+	 * @param outputStructureWriters
+	 *            the writers to output the found structures for corresponding image
+	 * @return the results for corresponding image: 0, if the call succeeded or negative value in case of error
+	 */
+	public static int[] processImages(List<byte[]> imageData, OsraOptions options, List<? extends Writer> outputStructureWriters) {
+		if (imageData.size() != outputStructureWriters.size()) {
+			throw new IllegalArgumentException("Number of images " + imageData.size() + " does not match number of writers "
+					+ outputStructureWriters.size());
+		}
+
+		final int[] results = new int[imageData.size()];
+		final OsraContext context = new OsraContext();
+
+		try {
+			for (int i = 0; i < results.length; i++) {
+				results[i] = context.processImage(imageData.get(i), outputStructureWriters.get(i), options);
+			}
+		} finally {
+			context.close();
+		}
+
+		return results;
+	}
+
+	/**
+	 * Recognize the structures in the given image with OSRA library.
+	 * 
+	 * @see OsraContext#recognize(byte[], OsraOptions)
+	 */
+	public static List<OsraStructure> recognize(byte[] imageData, OsraOptions options) {
+		final OsraContext context = new OsraContext();
+
+		try {
+			return context.recognize(imageData, options);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Recognize the structures in the given image with OSRA library and report the time spent in each processing stage.
+	 * 
+	 * @see OsraContext#recognize(byte[], OsraOptions, OsraTimings)
+	 */
+	public static List<OsraStructure> recognize(byte[] imageData, OsraOptions options, OsraTimings timings) {
+		final OsraContext context = new OsraContext();
+
+		try {
+			return context.recognize(imageData, options, timings);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Recognize the structures in the given image with OSRA library, until it is done or the token is cancelled.
+	 * 
+	 * @see OsraContext#recognize(byte[], OsraOptions, OsraCancellationToken)
+	 */
+	public static List<OsraStructure> recognize(byte[] imageData, OsraOptions options, OsraCancellationToken cancellation) {
+		final OsraContext context = new OsraContext();
+
+		try {
+			return context.recognize(imageData, options, cancellation);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Process the given image with OSRA library, until it is done or the token is cancelled. Use
+	 * {@link OsraCancellationToken#OsraCancellationToken(long, TimeUnit)} to limit the processing time.
+	 * 
+	 * @return 0, if the call succeeded, {@link OsraContext#PROCESSING_CANCELLED}, if the call was cancelled and only the
+	 *         structures found so far were written, or negative value in case of error
+	 * @see OsraContext#processImage(byte[], Writer, OsraOptions, OsraCancellationToken)
+	 */
+	public static int processImage(byte[] imageData, Writer outputStructureWriter, OsraOptions options,
+			OsraCancellationToken cancellation) {
+		final OsraContext context = new OsraContext();
+
+		try {
+			return context.processImage(imageData, outputStructureWriter, options, cancellation);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * @return the stage timings of all calls in this JVM, also available as JMX MBean
+	 */
+	public static OsraStageStatistics getStageStatistics() {
+		return OsraStageStatistics.getInstance();
+	}
+
+	private static OsraEnginePool defaultPool;
+
+	/**
+	 * Queues the given image for asynchronous recognition on the shared pool with one engine per available processor. The
+	 * calling thread is never blocked.
+	 * 
+	 * @see OsraEnginePool#recognize(byte[], OsraOptions, long, TimeUnit)
+	 */
+	public static CompletableFuture<List<OsraStructure>> submit(byte[] imageData, OsraOptions options) {
+		return getDefaultPool().recognize(imageData, options);
+	}
+
+	/**
+	 * Queues the given image for asynchronous recognition on the shared pool, limiting the time to wait for the result.
+	 * 
+	 * @see OsraEnginePool#recognize(byte[], OsraOptions, long, TimeUnit)
+	 */
+	public static CompletableFuture<List<OsraStructure>> submit(byte[] imageData, OsraOptions options, long timeout,
+			TimeUnit unit) {
+		return getDefaultPool().recognize(imageData, options, timeout, unit);
+	}
+
+	/**
+	 * @return the shared engine pool used by {@link #submit(byte[], OsraOptions)}, created on first use
+	 */
+	public static synchronized OsraEnginePool getDefaultPool() {
+		if (defaultPool == null) {
+			final int processors = Runtime.getRuntime().availableProcessors();
+			defaultPool = new OsraEnginePool(processors, 4 * processors);
+		}
+
+		return defaultPool;
+	}
+
+	/**
+	 * Process the image from the given buffer with OSRA library. Direct (e.g. memory-mapped) buffers are passed to the
+	 * native code without copying.
+	 * 
+	 * @see OsraContext#processImage(ByteBuffer, Writer, OsraOptions)
+	 */
+	public static int processImage(ByteBuffer imageData, Writer outputStructureWriter, OsraOptions options) {
+		final OsraContext context = new OsraContext();
+
+		try {
+			return context.processImage(imageData, outputStructureWriter, options);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Process the image from the given file with OSRA library. The file is memory-mapped and not copied to Java heap.
+	 * 
+	 * @see OsraContext#processImage(Path, Writer, OsraOptions)
+	 */
+	public static int processImage(Path imageFile, Writer outputStructureWriter, OsraOptions options) throws IOException {
+		final OsraContext context = new OsraContext();
+
+		try {
+			return context.processImage(imageFile, outputStructureWriter, options);
+		} finally {
+			context.close();
+		}
+	}
+
 	private static final String NAME = "osra";
 
 	private static final String VERSION;
@@ -0,0 +1,285 @@
+package net.sf.osra;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Processing options for OSRA library. The default values correspond to the defaults of the <a href=
+ * "https://sourceforge.net/apps/mediawiki/osra/index.php?title=Usage">CLI options</a>.
+ * <p>
+ * The field names are read by the native code, so they should not be renamed.
+ *
+ * @see OsraLib#processImage(byte[], java.io.Writer, int, boolean, int, double, int, boolean, boolean, String, String,
+ *      boolean, boolean, boolean, boolean, boolean)
+ */
+public class OsraOptions {
+
+	private int rotate;
+
+	private boolean invert;
+
+	private int inputResolution;
+
+	private double threshold;
+
+	private int doUnpaper;
+
+	private boolean jaggy;
+
+	private boolean adaptiveOption;
+
+	private String format = "smi";
+
+	private String embeddedFormat = "";
+
+	private boolean outputConfidence;
+
+	private boolean showResolutionGuess;
+
+	private boolean showPage;
+
+	private boolean outputCoordinates;
+
+	private boolean outputAvgBondLength;
+
+	/**
+	 * @return rotate image, degrees
+	 */
+	public int getRotate() {
+		return rotate;
+	}
+
+	public void setRotate(int rotate) {
+		this.rotate = rotate;
+	}
+
+	/**
+	 * @return force color inversion (for white-on-black images)
+	 */
+	public boolean isInvert() {
+		return invert;
+	}
+
+	public void setInvert(boolean invert) {
+		this.invert = invert;
+	}
+
+	/**
+	 * @return force processing at a specific resolution, dpi (0 means that several resolutions are tried)
+	 */
+	public int getInputResolution() {
+		return inputResolution;
+	}
+
+	public void setInputResolution(int inputResolution) {
+		this.inputResolution = inputResolution;
+	}
+
+	/**
+	 * @return black-white binarization threshold 0.0-1.0 (0 means the default threshold for the resolution)
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return perform unpaper image pre-processing, rounds
+	 */
+	public int getDoUnpaper() {
+		return doUnpaper;
+	}
+
+	public void setDoUnpaper(int doUnpaper) {
+		this.doUnpaper = doUnpaper;
+	}
+
+	/**
+	 * @return perform image downsampling
+	 */
+	public boolean isJaggy() {
+		return jaggy;
+	}
+
+	public void setJaggy(boolean jaggy) {
+		this.jaggy = jaggy;
+	}
+
+	/**
+	 * @return perform adaptive thresholding (more CPU-intensive)
+	 */
+	public boolean isAdaptiveOption() {
+		return adaptiveOption;
+	}
+
+	public void setAdaptiveOption(boolean adaptiveOption) {
+		this.adaptiveOption = adaptiveOption;
+	}
+
+	/**
+	 * @return one of the formats, accepted by OpenBabel ("sdf", "smi", "can")
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
+	}
+
+	/**
+	 * @return format to be embedded into SDF ("inchi", "smi", "can") or empty string
+	 */
+	public String getEmbeddedFormat() {
+		return embeddedFormat;
+	}
+
+	public void setEmbeddedFormat(String embeddedFormat) {
+		this.embeddedFormat = embeddedFormat;
+	}
+
+	/**
+	 * @return include confidence
+	 */
+	public boolean isOutputConfidence() {
+		return outputConfidence;
+	}
+
+	public void setOutputConfidence(boolean outputConfidence) {
+		this.outputConfidence = outputConfidence;
+	}
+
+	/**
+	 * @return include image resolution estimate
+	 */
+	public boolean isShowResolutionGuess() {
+		return showResolutionGuess;
+	}
+
+	public void setShowResolutionGuess(boolean showResolutionGuess) {
+		this.showResolutionGuess = showResolutionGuess;
+	}
+
+	/**
+	 * @return include page number
+	 */
+	public boolean isShowPage() {
+		return showPage;
+	}
+
+	public void setShowPage(boolean showPage) {
+		this.showPage = showPage;
+	}
+
+	/**
+	 * @return include box coordinates
+	 */
+	public boolean isOutputCoordinates() {
+		return outputCoordinates;
+	}
+
+	public void setOutputCoordinates(boolean outputCoordinates) {
+		this.outputCoordinates = outputCoordinates;
+	}
+
+	/**
+	 * @return include average bond length
+	 */
+	public boolean isOutputAvgBondLength() {
+		return outputAvgBondLength;
+	}
+
+	public void setOutputAvgBondLength(boolean outputAvgBondLength) {
+		this.outputAvgBondLength = outputAvgBondLength;
+	}
+
+	/**
+	 * Lists all options.
+	 */
+	@Override
+	public String toString() {
+		return "rotate=" + rotate + ",invert=" + invert + ",inputResolution=" + inputResolution + ",threshold=" + threshold
+				+ ",doUnpaper=" + doUnpaper + ",jaggy=" + jaggy + ",adaptiveOption=" + adaptiveOption + ",format=" + format
+				+ ",embeddedFormat=" + embeddedFormat + ",outputConfidence=" + outputConfidence + ",showResolutionGuess="
+				+ showResolutionGuess + ",showPage=" + showPage + ",outputCoordinates=" + outputCoordinates
+				+ ",outputAvgBondLength=" + outputAvgBondLength;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof OsraOptions)) {
+			return false;
+		}
+
+		final OsraOptions other = (OsraOptions) obj;
+
+		return rotate == other.rotate && invert == other.invert && inputResolution == other.inputResolution
+				&& Double.compare(threshold, other.threshold) == 0 && doUnpaper == other.doUnpaper && jaggy == other.jaggy
+				&& adaptiveOption == other.adaptiveOption && equal(format, other.format)
+				&& equal(embeddedFormat, other.embeddedFormat) && outputConfidence == other.outputConfidence
+				&& showResolutionGuess == other.showResolutionGuess && showPage == other.showPage
+				&& outputCoordinates == other.outputCoordinates && outputAvgBondLength == other.outputAvgBondLength;
+	}
+
+	@Override
+	public int hashCode() {
+		final long thresholdBits = Double.doubleToLongBits(threshold);
+		int result = rotate;
+
+		result = 31 * result + (invert ? 1 : 0);
+		result = 31 * result + inputResolution;
+		result = 31 * result + (int) (thresholdBits ^ (thresholdBits >>> 32));
+		result = 31 * result + doUnpaper;
+		result = 31 * result + (jaggy ? 1 : 0);
+		result = 31 * result + (adaptiveOption ? 1 : 0);
+		result = 31 * result + (format == null ? 0 : format.hashCode());
+		result = 31 * result + (embeddedFormat == null ? 0 : embeddedFormat.hashCode());
+		result = 31 * result + (outputConfidence ? 1 : 0);
+		result = 31 * result + (showResolutionGuess ? 1 : 0);
+		result = 31 * result + (showPage ? 1 : 0);
+		result = 31 * result + (outputCoordinates ? 1 : 0);
+		result = 31 * result + (outputAvgBondLength ? 1 : 0);
+
+		return result;
+	}
+
+	/**
+	 * Writes all options, which are compared by {@link #equals(Object)}, for the key of {@link OsraResultCache}. A
+	 * <code>null</code> string is written differently from any string value.
+	 */
+	void writeKey(DataOutputStream out) throws IOException {
+		out.writeInt(rotate);
+		out.writeBoolean(invert);
+		out.writeInt(inputResolution);
+		out.writeDouble(threshold);
+		out.writeInt(doUnpaper);
+		out.writeBoolean(jaggy);
+		out.writeBoolean(adaptiveOption);
+		writeKey(out, format);
+		writeKey(out, embeddedFormat);
+		out.writeBoolean(outputConfidence);
+		out.writeBoolean(showResolutionGuess);
+		out.writeBoolean(showPage);
+		out.writeBoolean(outputCoordinates);
+		out.writeBoolean(outputAvgBondLength);
+	}
+
+	private static void writeKey(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,21 @@
+package net.sf.osra;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Receives the structures recognized in a multi-page document as soon as each page is done.
+ *
+ * @see OsraContext#recognizePages(ByteBuffer, OsraOptions, OsraPageListener)
+ */
+public interface OsraPageListener {
+
+	/**
+	 * @param page
+	 *            page number, starting from 1
+	 * @param structures
+	 *            the structures recognized on the page
+	 * @return <code>true</code> to continue with the next page or <code>false</code> to stop processing the document
+	 */
+	boolean pageRecognized(int page, List<OsraStructure> structures);
+}
@@ -0,0 +1,304 @@
+package net.sf.osra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of recognition results in front of {@link OsraContext}. The results are keyed by SHA-256 hash of the image bytes
+ * together with all {@link OsraOptions options}, so the same figure reprinted in several documents is
+ * recognized only once.
+ * <p>
+ * There are two tiers: an in-memory LRU map limited by the number of entries, and an optional directory on disk with one
+ * file per entry, which survives restarts. The cache is thread-safe; if the same image is requested concurrently before it
+ * is cached, it may be recognized more than once.
+ */
+public class OsraResultCache {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int DISK_FORMAT_VERSION = 1;
+
+	private final OsraContext context;
+
+	private final Map<String, List<OsraStructure>> memory;
+
+	private final File directory;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+
+	private final AtomicLong diskHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param context
+	 *            the context to recognize the images, which are not in cache
+	 * @param memoryEntries
+	 *            maximum number of results kept in memory
+	 * @param directory
+	 *            the directory for on-disk tier or <code>null</code> to keep the results in memory only
+	 */
+	public OsraResultCache(OsraContext context, final int memoryEntries, File directory) {
+		this.context = context;
+		this.directory = directory;
+		this.memory = new LinkedHashMap<String, List<OsraStructure>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<OsraStructure>> eldest) {
+				return size() > memoryEntries;
+			}
+		};
+
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create cache directory " + directory);
+		}
+	}
+
+	/**
+	 * Returns the cached structures for the given image or recognizes them with the context.
+	 *
+	 * @see OsraContext#recognize(byte[], OsraOptions)
+	 */
+	public List<OsraStructure> recognize(byte[] imageData, OsraOptions options) {
+		final MessageDigest digest = newDigest();
+		digest.update(imageData);
+
+		final String key = toKey(digest, options);
+		List<OsraStructure> structures = lookup(key);
+
+		if (structures == null) {
+			structures = store(key, context.recognize(imageData, options));
+		}
+
+		return structures;
+	}
+
+	/**
+	 * Returns the cached structures for the image stored in the given buffer between its position and limit or recognizes
+	 * them with the context.
+	 *
+	 * @see OsraContext#recognize(ByteBuffer, OsraOptions)
+	 */
+	public List<OsraStructure> recognize(ByteBuffer imageData, OsraOptions options) {
+		final MessageDigest digest = newDigest();
+		digest.update(imageData.duplicate());
+
+		final String key = toKey(digest, options);
+		List<OsraStructure> structures = lookup(key);
+
+		if (structures == null) {
+			structures = store(key, context.recognize(imageData, options));
+		}
+
+		return structures;
+	}
+
+	/**
+	 * @return number of requests served from memory
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	/**
+	 * @return number of requests served from disk
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * @return number of requests, which needed recognition
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of results kept in memory
+	 */
+	public int getMemorySize() {
+		synchronized (memory) {
+			return memory.size();
+		}
+	}
+
+	/**
+	 * Removes all results from memory. The on-disk tier is left intact.
+	 */
+	public void clearMemory() {
+		synchronized (memory) {
+			memory.clear();
+		}
+	}
+
+	private List<OsraStructure> lookup(String key) {
+		List<OsraStructure> structures;
+
+		synchronized (memory) {
+			structures = memory.get(key);
+		}
+
+		if (structures != null) {
+			memoryHits.incrementAndGet();
+			return structures;
+		}
+
+		if (directory != null) {
+			structures = read(new File(directory, key));
+
+			if (structures != null) {
+				diskHits.incrementAndGet();
+
+				synchronized (memory) {
+					memory.put(key, structures);
+				}
+
+				return structures;
+			}
+		}
+
+		misses.incrementAndGet();
+
+		return null;
+	}
+
+	private List<OsraStructure> store(String key, List<OsraStructure> structures) {
+		structures = Collections.unmodifiableList(structures);
+
+		synchronized (memory) {
+			memory.put(key, structures);
+		}
+
+		if (directory != null) {
+			write(new File(directory, key), structures);
+		}
+
+		return structures;
+	}
+
+	/**
+	 * @return the structures read from the given file or <code>null</code>, if the file does not exist or cannot be read
+	 */
+	private static List<OsraStructure> read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			try {
+				if (in.readInt() != DISK_FORMAT_VERSION) {
+					return null;
+				}
+
+				final int count = in.readInt();
+				final List<OsraStructure> structures = new ArrayList<OsraStructure>(count);
+
+				for (int i = 0; i < count; i++) {
+					final byte[] structure = new byte[in.readInt()];
+					in.readFully(structure);
+
+					structures.add(new OsraStructure(new String(structure, UTF8), in.readDouble(), in.readInt(), in
+							.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readDouble(), in.readInt()));
+				}
+
+				return Collections.unmodifiableList(structures);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// Corrupted or concurrently written entry: treat as missing.
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the structures to a temporary file, which is then renamed, so that readers never see a partial entry. Failures
+	 * are ignored, as the on-disk tier is only an optimization.
+	 */
+	private static void write(File file, List<OsraStructure> structures) {
+		final File temp = new File(file.getPath() + '.' + Thread.currentThread().getId() + ".tmp");
+
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+			try {
+				out.writeInt(DISK_FORMAT_VERSION);
+				out.writeInt(structures.size());
+
+				for (OsraStructure structure : structures) {
+					final byte[] bytes = structure.getStructure().getBytes(UTF8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+					out.writeDouble(structure.getConfidence());
+					out.writeInt(structure.getPage());
+					out.writeInt(structure.getX1());
+					out.writeInt(structure.getY1());
+					out.writeInt(structure.getX2());
+					out.writeInt(structure.getY2());
+					out.writeDouble(structure.getAvgBondLength());
+					out.writeInt(structure.getResolution());
+				}
+			} finally {
+				out.close();
+			}
+
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			temp.delete();
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required to be supported by every Java platform.
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toKey(MessageDigest digest, OsraOptions options) {
+		final ByteArrayOutputStream optionBytes = new ByteArrayOutputStream();
+
+		try {
+			options.writeKey(new DataOutputStream(optionBytes));
+		} catch (IOException e) {
+			// Not thrown by ByteArrayOutputStream.
+			throw new RuntimeException(e);
+		}
+
+		digest.update(optionBytes.toByteArray());
+
+		final byte[] hash = digest.digest();
+		final StringBuilder key = new StringBuilder(hash.length * 2);
+
+		for (byte b : hash) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return key.toString();
+	}
+}
@@ -0,0 +1,171 @@
+package net.sf.osra;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Aggregated {@link OsraTimings} of all {@link OsraContext} calls in this JVM. The instance is registered in the platform
+ * MBean server as <code>net.sf.osra:type=StageStatistics</code> on first use, so it can be watched with JConsole or any
+ * other JMX client while tuning the options like {@link OsraOptions#setAdaptiveOption(boolean) adaptive thresholding} or
+ * {@link OsraOptions#setDoUnpaper(int) unpaper}.
+ * <p>
+ * The legacy {@link OsraLib#processImage(byte[], java.io.Writer, int, boolean, int, double, int, boolean, boolean, String,
+ * String, boolean, boolean, boolean, boolean, boolean)} call is not measured.
+ */
+public class OsraStageStatistics implements OsraStageStatisticsMBean {
+
+	public static final String OBJECT_NAME = "net.sf.osra:type=StageStatistics";
+
+	private static OsraStageStatistics instance;
+
+	private long calls;
+
+	private long failures;
+
+	private long pages;
+
+	private long boxes;
+
+	private long structures;
+
+	private long decodeNanos;
+
+	private long binarizationNanos;
+
+	private long unpaperNanos;
+
+	private long segmentationNanos;
+
+	private long vectorizationNanos;
+
+	private long ocrNanos;
+
+	private long assemblyNanos;
+
+	private long conversionNanos;
+
+	private OsraStageStatistics() {
+	}
+
+	/**
+	 * @return the statistics of this JVM, registered in the platform MBean server when this method is called for the first
+	 *         time
+	 */
+	public static synchronized OsraStageStatistics getInstance() {
+		if (instance == null) {
+			instance = new OsraStageStatistics();
+
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				// Already registered by the copy of the library loaded by another class loader: keep the statistics unexposed.
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Adds the timings of one call.
+	 *
+	 * @param result
+	 *            the value returned by the native library
+	 */
+	synchronized void add(OsraTimings timings, int result) {
+		calls++;
+
+		if (result < 0) {
+			failures++;
+		}
+
+		pages += timings.getPages();
+		boxes += timings.getBoxes();
+		structures += timings.getStructures();
+		decodeNanos += timings.getDecodeNanos();
+		binarizationNanos += timings.getBinarizationNanos();
+		unpaperNanos += timings.getUnpaperNanos();
+		segmentationNanos += timings.getSegmentationNanos();
+		vectorizationNanos += timings.getVectorizationNanos();
+		ocrNanos += timings.getOcrNanos();
+		assemblyNanos += timings.getAssemblyNanos();
+		conversionNanos += timings.getConversionNanos();
+	}
+
+	public synchronized long getCalls() {
+		return calls;
+	}
+
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	public synchronized long getPages() {
+		return pages;
+	}
+
+	public synchronized long getBoxes() {
+		return boxes;
+	}
+
+	public synchronized long getStructures() {
+		return structures;
+	}
+
+	public synchronized long getDecodeMillis() {
+		return decodeNanos / 1000000;
+	}
+
+	public synchronized long getBinarizationMillis() {
+		return binarizationNanos / 1000000;
+	}
+
+	public synchronized long getUnpaperMillis() {
+		return unpaperNanos / 1000000;
+	}
+
+	public synchronized long getSegmentationMillis() {
+		return segmentationNanos / 1000000;
+	}
+
+	public synchronized long getVectorizationMillis() {
+		return vectorizationNanos / 1000000;
+	}
+
+	public synchronized long getOcrMillis() {
+		return ocrNanos / 1000000;
+	}
+
+	public synchronized long getAssemblyMillis() {
+		return assemblyNanos / 1000000;
+	}
+
+	public synchronized long getConversionMillis() {
+		return conversionNanos / 1000000;
+	}
+
+	public synchronized long getTotalMillis() {
+		return (decodeNanos + binarizationNanos + unpaperNanos + segmentationNanos + vectorizationNanos + ocrNanos
+				+ assemblyNanos + conversionNanos) / 1000000;
+	}
+
+	public synchronized double getAverageMillis() {
+		return calls == 0 ? 0 : (double) getTotalMillis() / calls;
+	}
+
+	public synchronized void reset() {
+		calls = failures = pages = boxes = structures = 0;
+		decodeNanos = binarizationNanos = unpaperNanos = segmentationNanos = 0;
+		vectorizationNanos = ocrNanos = assemblyNanos = conversionNanos = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "calls=" + calls + " failures=" + failures + " pages=" + pages + " boxes=" + boxes + " structures="
+				+ structures + " decode=" + getDecodeMillis() + "ms binarization=" + getBinarizationMillis() + "ms unpaper="
+				+ getUnpaperMillis() + "ms segmentation=" + getSegmentationMillis() + "ms vectorization="
+				+ getVectorizationMillis() + "ms ocr=" + getOcrMillis() + "ms assembly=" + getAssemblyMillis()
+				+ "ms conversion=" + getConversionMillis() + "ms";
+	}
+}
@@ -0,0 +1,43 @@
+package net.sf.osra;
+
+/**
+ * JMX management interface of {@link OsraStageStatistics}. The times are the totals since start or the last
+ * {@link #reset()}, milliseconds.
+ */
+public interface OsraStageStatisticsMBean {
+
+	long getCalls();
+
+	long getFailures();
+
+	long getPages();
+
+	long getBoxes();
+
+	long getStructures();
+
+	long getDecodeMillis();
+
+	long getBinarizationMillis();
+
+	long getUnpaperMillis();
+
+	long getSegmentationMillis();
+
+	long getVectorizationMillis();
+
+	long getOcrMillis();
+
+	long getAssemblyMillis();
+
+	long getConversionMillis();
+
+	long getTotalMillis();
+
+	/**
+	 * @return average time of one call, milliseconds
+	 */
+	double getAverageMillis();
+
+	void reset();
+}
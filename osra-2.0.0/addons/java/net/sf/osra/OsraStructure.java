@@ -0,0 +1,107 @@
+package net.sf.osra;
+
+/**
+ * One structure recognized by OSRA library. The objects are created by the native code.
+ */
+public class OsraStructure {
+
+	private final String structure;
+
+	private final double confidence;
+
+	private final int page;
+
+	private final int x1;
+
+	private final int y1;
+
+	private final int x2;
+
+	private final int y2;
+
+	private final double avgBondLength;
+
+	private final int resolution;
+
+	public OsraStructure(String structure, double confidence, int page, int x1, int y1, int x2, int y2,
+			double avgBondLength, int resolution) {
+		this.structure = structure;
+		this.confidence = confidence;
+		this.page = page;
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		this.avgBondLength = avgBondLength;
+		this.resolution = resolution;
+	}
+
+	/**
+	 * @return the structure in the format requested by {@link OsraOptions#getFormat()} (SMILES string, MOL file, ...)
+	 */
+	public String getStructure() {
+		return structure;
+	}
+
+	/**
+	 * @return confidence estimate
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * @return page number, starting from 1
+	 */
+	public int getPage() {
+		return page;
+	}
+
+	/**
+	 * @return left coordinate of the box surrounding the structure on the page
+	 */
+	public int getX1() {
+		return x1;
+	}
+
+	/**
+	 * @return top coordinate of the box surrounding the structure on the page
+	 */
+	public int getY1() {
+		return y1;
+	}
+
+	/**
+	 * @return right coordinate of the box surrounding the structure on the page
+	 */
+	public int getX2() {
+		return x2;
+	}
+
+	/**
+	 * @return bottom coordinate of the box surrounding the structure on the page
+	 */
+	public int getY2() {
+		return y2;
+	}
+
+	/**
+	 * @return average bond length, as measured on the page
+	 */
+	public double getAvgBondLength() {
+		return avgBondLength;
+	}
+
+	/**
+	 * @return the resolution guess, at which the structure was recognized, dpi
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	@Override
+	public String toString() {
+		return structure.trim() + " [confidence=" + confidence + ", page=" + page + ", box=" + x1 + 'x' + y1 + '-' + x2
+				+ 'x' + y2 + ", avgBondLength=" + avgBondLength + ", resolution=" + resolution + ']';
+	}
+}
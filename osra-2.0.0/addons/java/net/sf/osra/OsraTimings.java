@@ -0,0 +1,129 @@
+package net.sf.osra;
+
+/**
+ * Wall-clock time spent in each processing stage of one call, as measured by the native library, and the amount of
+ * processed data. Pass a new instance to {@link OsraContext#processImage(byte[], java.io.Writer, OsraOptions, OsraTimings)}
+ * or {@link OsraContext#recognize(byte[], OsraOptions, OsraTimings)} to have it filled.
+ * <p>
+ * The field names are written by the native code, so they should not be renamed.
+ *
+ * @see OsraStageStatistics
+ */
+public class OsraTimings {
+
+	private long decodeNanos;
+
+	private long binarizationNanos;
+
+	private long unpaperNanos;
+
+	private long segmentationNanos;
+
+	private long vectorizationNanos;
+
+	private long ocrNanos;
+
+	private long assemblyNanos;
+
+	private long conversionNanos;
+
+	private int pages;
+
+	private int boxes;
+
+	private int structures;
+
+	/**
+	 * @return reading and rasterization of the image, nanoseconds
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos;
+	}
+
+	/**
+	 * @return conversion to grayscale (including adaptive thresholding), scaling and rotation, nanoseconds
+	 */
+	public long getBinarizationNanos() {
+		return binarizationNanos;
+	}
+
+	/**
+	 * @return unpaper deskewing and cleaning, nanoseconds
+	 */
+	public long getUnpaperNanos() {
+		return unpaperNanos;
+	}
+
+	/**
+	 * @return finding of the boxes, which may contain structures, nanoseconds
+	 */
+	public long getSegmentationNanos() {
+		return segmentationNanos;
+	}
+
+	/**
+	 * @return thinning of the boxes and tracing them with potrace, nanoseconds
+	 */
+	public long getVectorizationNanos() {
+		return vectorizationNanos;
+	}
+
+	/**
+	 * @return detection and recognition of characters, nanoseconds
+	 */
+	public long getOcrNanos() {
+		return ocrNanos;
+	}
+
+	/**
+	 * @return the rest of the box analysis: atoms, bonds and labels, nanoseconds
+	 */
+	public long getAssemblyNanos() {
+		return assemblyNanos;
+	}
+
+	/**
+	 * @return splitting of the fragments and conversion of the molecules to output format by OpenBabel, nanoseconds
+	 */
+	public long getConversionNanos() {
+		return conversionNanos;
+	}
+
+	/**
+	 * @return the sum of all stages, nanoseconds
+	 */
+	public long getTotalNanos() {
+		return decodeNanos + binarizationNanos + unpaperNanos + segmentationNanos + vectorizationNanos + ocrNanos
+				+ assemblyNanos + conversionNanos;
+	}
+
+	/**
+	 * @return number of processed pages
+	 */
+	public int getPages() {
+		return pages;
+	}
+
+	/**
+	 * @return number of analysed boxes, counting every tried resolution
+	 */
+	public int getBoxes() {
+		return boxes;
+	}
+
+	/**
+	 * @return number of reported structures
+	 */
+	public int getStructures() {
+		return structures;
+	}
+
+	@Override
+	public String toString() {
+		return "decode=" + decodeNanos / 1000000 + "ms binarization=" + binarizationNanos / 1000000 + "ms unpaper="
+				+ unpaperNanos / 1000000 + "ms segmentation=" + segmentationNanos / 1000000 + "ms vectorization="
+				+ vectorizationNanos / 1000000 + "ms ocr=" + ocrNanos / 1000000 + "ms assembly=" + assemblyNanos / 1000000
+				+ "ms conversion=" + conversionNanos / 1000000 + "ms pages=" + pages + " boxes=" + boxes + " structures="
+				+ structures;
+	}
+}
@@ -0,0 +1,89 @@
+package net.sf.osra;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+/**
+ * Compares the throughput of per-call {@link OsraLib#processImage} with the batch processing using reusable
+ * {@link OsraContext}.
+ * <p>
+ * Usage: <code>java net.sf.osra.OsraLibBatchTest [rounds] image1.png image2.png ...</code>, where <code>rounds</code>
+ * defaults to 10.
+ */
+public class OsraLibBatchTest {
+
+	private static final int DEFAULT_ROUNDS = 10;
+
+	public static void main(String[] args) throws IOException {
+		// The first argument is the number of rounds if it is a number:
+		final boolean hasRounds = args.length > 0 && args[0].matches("\\d+");
+		final int firstImage = hasRounds ? 1 : 0;
+
+		if (args.length <= firstImage) {
+			System.out.println("Usage: OsraLibBatchTest [rounds] image_file_name...");
+			return;
+		}
+
+		final int rounds = hasRounds ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+		final byte[][] images = new byte[args.length - firstImage][];
+
+		for (int i = 0; i < images.length; i++) {
+			final InputStream is = new BufferedInputStream(new FileInputStream(args[firstImage + i]));
+
+			try {
+				images[i] = OsraLibTest.writeToArray(is);
+			} finally {
+				is.close();
+			}
+		}
+
+		final OsraOptions options = new OsraOptions();
+		options.setFormat("sdf");
+
+		// Warm up both paths:
+		perCall(images, options, 1);
+		batch(images, options, 1);
+
+		long time = System.nanoTime();
+		perCall(images, options, rounds);
+		report("per-call", images.length * rounds, System.nanoTime() - time);
+
+		time = System.nanoTime();
+		batch(images, options, rounds);
+		report("batch", images.length * rounds, System.nanoTime() - time);
+	}
+
+	private static void perCall(byte[][] images, OsraOptions options, int rounds) {
+		for (int r = 0; r < rounds; r++) {
+			for (byte[] image : images) {
+				OsraLib.processImage(image, new StringWriter(), options.getRotate(), options.isInvert(),
+						options.getInputResolution(), options.getThreshold(), options.getDoUnpaper(), options.isJaggy(),
+						options.isAdaptiveOption(), options.getFormat(), options.getEmbeddedFormat(),
+						options.isOutputConfidence(), options.isShowResolutionGuess(), options.isShowPage(),
+						options.isOutputCoordinates(), options.isOutputAvgBondLength());
+			}
+		}
+	}
+
+	private static void batch(byte[][] images, OsraOptions options, int rounds) {
+		final OsraContext context = new OsraContext();
+
+		try {
+			for (int r = 0; r < rounds; r++) {
+				for (byte[] image : images) {
+					context.processImage(image, new StringWriter(), options);
+				}
+			}
+		} finally {
+			context.close();
+		}
+	}
+
+	private static void report(String name, int count, long nanos) {
+		System.out.println(name + ": " + count + " images in " + nanos / 1000000 + " ms, "
+				+ (count * 1000000000.0 / nanos) + " images/s");
+	}
+}
@@ -196,5 +196,10 @@ typedef struct bond_s bond_t;
 // (b) The format libraries are installed, but do not correspond to /usr/lib/libopenbabel.so.y.y.y. Check they correspond to the same OpenBabel version.
 // (c) You need to preload OpenBabel e.g. using LD_PRELOAD=/usr/lib/libopenbabel.so
 #define ERROR_UNKNOWN_OPENBABEL_FORMAT          -6
+// This error code is returned, if the page requested from a multi-page document does not exist.
+#define ERROR_PAGE_OUT_OF_RANGE                 -7
+// This status (which is not an error) is returned, if processing was cancelled or its time budget was exceeded. The structures found
+// before that are reported.
+#define PROCESSING_CANCELLED                    1
 
 #endif
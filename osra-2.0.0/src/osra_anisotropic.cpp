@@ -21,6 +21,7 @@
 #define cimg_plugin "greycstoration.h"
 
 #include "CImg.h"
+#include "osra_threads.h"
 
 using namespace cimg_library;
 using namespace Magick;
@@ -33,6 +34,7 @@ Image anisotropic_smoothing(const Image &image, int width, int height, const flo
   res.type(GrayscaleType);
   #pragma omp critical
   {
+    osra_library_lock lock;
     CImg<unsigned char> source(width, height, 1, 1, 0);
     unsigned char color[1] = { 0 };
     unsigned char cc;
@@ -87,6 +89,7 @@ Image anisotropic_scaling(const Image &image, int width, int height, int nw, int
   res.type(GrayscaleType);
   #pragma omp critical
   {
+    osra_library_lock lock;
     CImg<unsigned char> source(width, height, 1, 1, 0);
     unsigned char color[1] = { 0 };
     unsigned char cc;
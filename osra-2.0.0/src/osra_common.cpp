@@ -25,9 +25,23 @@
 #include <math.h> // fabs(double)
 #include <float.h> // FLT_MAX
 #include <fstream> // std::ofstream, std::ifstream
+#include <pthread.h> // pthread_mutex_t
 
 #include "osra_segment.h"
 #include "osra_common.h"
+#include "osra_threads.h"
+
+static pthread_mutex_t library_mutex = PTHREAD_MUTEX_INITIALIZER;
+
+osra_library_lock::osra_library_lock()
+{
+  pthread_mutex_lock(&library_mutex);
+}
+
+osra_library_lock::~osra_library_lock()
+{
+  pthread_mutex_unlock(&library_mutex);
+}
 
 /* return new un-initialized bitmap. NULL with errno on error */
 potrace_bitmap_t *const bm_new(int w, int h)
@@ -283,6 +297,13 @@ int count_pages(const string &input)
   return (imageList.size());
 }
 
+int count_pages(const Blob &input)
+{
+  list<Image> imageList;
+  readImages(&imageList, input);
+  return (imageList.size());
+}
+
 int count_atoms(const vector<atom_t> &atom, int n_atom)
 {
   int r = 0;
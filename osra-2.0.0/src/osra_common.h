@@ -268,6 +268,17 @@ double percentile75(const vector<bond_t> &bond, int n_bond, const vector<atom_t>
 // number of pages in an image file
 int count_pages(const string &input);
 
+// Function: count_pages()
+//
+// Counts the number of pages in an image held in memory
+//
+// Parameters:
+// input - image data
+//
+// Returns:
+// number of pages in the image
+int count_pages(const Magick::Blob &input);
+
 // Function: count_atoms()
 //
 // Counts the number of non-deleted atoms in a molecule
@@ -29,6 +29,7 @@ typedef long long __int64;
 #include <string> // std::string
 #include <ostream> // std:ostream
 #include <sstream> // std:ostringstream
+#include <vector> // std::vector
 
 #include "config.h" // PACKAGE_VERSION
 
@@ -52,6 +53,110 @@ extern "C" {
    * Signature: ()Ljava/lang/String;
    */
   JNIEXPORT jstring JNICALL Java_net_sf_osra_OsraLib_getVersion(JNIEnv *, jclass);
+
+  /*
+   * Class:     net_sf_osra_OsraContext
+   * Method:    create
+   * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)J
+   */
+  JNIEXPORT jlong JNICALL Java_net_sf_osra_OsraContext_create(JNIEnv *, jclass, jstring, jstring, jstring);
+
+  /*
+   * Class:     net_sf_osra_OsraContext
+   * Method:    destroy
+   * Signature: (J)V
+   */
+  JNIEXPORT void JNICALL Java_net_sf_osra_OsraContext_destroy(JNIEnv *, jclass, jlong);
+
+  /*
+   * Class:     net_sf_osra_OsraContext
+   * Method:    processImage
+   * Signature: (J[BLjava/io/Writer;Lnet/sf/osra/OsraOptions;Ljava/util/List;ILnet/sf/osra/OsraTimings;Lnet/sf/osra/OsraCancellationToken;)I
+   */
+  JNIEXPORT jint JNICALL Java_net_sf_osra_OsraContext_processImage(JNIEnv *, jclass, jlong, jbyteArray, jobject, jobject, jobject, jint, jobject, jobject);
+
+  /*
+   * Class:     net_sf_osra_OsraContext
+   * Method:    processBuffer
+   * Signature: (JLjava/nio/ByteBuffer;IILjava/io/Writer;Lnet/sf/osra/OsraOptions;Ljava/util/List;ILnet/sf/osra/OsraTimings;Lnet/sf/osra/OsraCancellationToken;)I
+   */
+  JNIEXPORT jint JNICALL Java_net_sf_osra_OsraContext_processBuffer(JNIEnv *, jclass, jlong, jobject, jint, jint, jobject, jobject, jobject, jint, jobject, jobject);
+}
+
+// Writes the given string to java.io.Writer by calling Writer#write(String).
+static void write_to_writer(JNIEnv *j_env, jobject j_writer, const string &str)
+{
+  // Perhaps there is a more optimal way to bridge from std:ostream to java.io.Writer.
+  // See http://stackoverflow.com/questions/524524/creating-an-ostream/524590#524590
+  jclass j_writer_class = j_env->FindClass("java/io/Writer");
+  jmethodID write_method_id = j_env->GetMethodID(j_writer_class, "write", "(Ljava/lang/String;)V");
+
+  jstring j_string = j_env->NewStringUTF(str.c_str());
+
+  j_env->CallVoidMethod(j_writer, write_method_id, j_string);
+
+  j_env->DeleteLocalRef(j_writer_class);
+  j_env->DeleteLocalRef(j_string);
+}
+
+// Returns the value of string field of given object or empty string, if the field is null.
+static string get_string_field(JNIEnv *j_env, jobject j_object, jclass j_class, const char *name)
+{
+  jstring j_value = (jstring) j_env->GetObjectField(j_object, j_env->GetFieldID(j_class, name, "Ljava/lang/String;"));
+
+  if (j_value == NULL)
+    return "";
+
+  const char *value = j_env->GetStringUTFChars(j_value, NULL);
+  string result(value);
+  j_env->ReleaseStringUTFChars(j_value, value);
+  j_env->DeleteLocalRef(j_value);
+
+  return result;
+}
+
+// Mirrors the fields of net.sf.osra.OsraOptions.
+struct java_options_s
+{
+  int rotate;
+  bool invert;
+  int input_resolution;
+  double threshold;
+  int do_unpaper;
+  bool jaggy;
+  bool adaptive_option;
+  string output_format;
+  string embedded_format;
+  bool output_confidence;
+  bool show_resolution_guess;
+  bool show_page;
+  bool output_coordinates;
+  bool output_avg_bond_length;
+};
+
+typedef struct java_options_s java_options_t;
+
+// Reads net.sf.osra.OsraOptions Java object into java_options_t structure.
+static void get_options(JNIEnv *j_env, jobject j_options, java_options_t &options)
+{
+  jclass j_class = j_env->GetObjectClass(j_options);
+
+  options.rotate = j_env->GetIntField(j_options, j_env->GetFieldID(j_class, "rotate", "I"));
+  options.invert = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "invert", "Z"));
+  options.input_resolution = j_env->GetIntField(j_options, j_env->GetFieldID(j_class, "inputResolution", "I"));
+  options.threshold = j_env->GetDoubleField(j_options, j_env->GetFieldID(j_class, "threshold", "D"));
+  options.do_unpaper = j_env->GetIntField(j_options, j_env->GetFieldID(j_class, "doUnpaper", "I"));
+  options.jaggy = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "jaggy", "Z"));
+  options.adaptive_option = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "adaptiveOption", "Z"));
+  options.output_format = get_string_field(j_env, j_options, j_class, "format");
+  options.embedded_format = get_string_field(j_env, j_options, j_class, "embeddedFormat");
+  options.output_confidence = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "outputConfidence", "Z"));
+  options.show_resolution_guess = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "showResolutionGuess", "Z"));
+  options.show_page = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "showPage", "Z"));
+  options.output_coordinates = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "outputCoordinates", "Z"));
+  options.output_avg_bond_length = j_env->GetBooleanField(j_options, j_env->GetFieldID(j_class, "outputAvgBondLength", "Z"));
+
+  j_env->DeleteLocalRef(j_class);
 }
 
 JNIEXPORT jint JNICALL Java_net_sf_osra_OsraLib_processImage(JNIEnv *j_env, jclass j_class,
@@ -80,8 +185,6 @@ JNIEXPORT jint JNICALL Java_net_sf_osra_OsraLib_processImage(JNIEnv *j_env, jcla
 
   if (image_data != NULL)
     {
-      // Perhaps there is a more optimal way to bridge from std:ostream to java.io.Writer.
-      // See http://stackoverflow.com/questions/524524/creating-an-ostream/524590#524590
       ostringstream structure_output_stream;
 
       result = osra_process_image(
@@ -102,21 +205,13 @@ JNIEXPORT jint JNICALL Java_net_sf_osra_OsraLib_processImage(JNIEnv *j_env, jcla
                  j_show_page,
                  j_output_coordinates,
                  j_output_avg_bond_length,
+                 false,
                  "."
                );
 
       j_env->ReleaseByteArrayElements(j_image_data, (jbyte *) image_data, JNI_ABORT);
 
-      // Locate java.io.Writer#write(String) method:
-      jclass j_writer_class = j_env->FindClass("java/io/Writer");
-      jmethodID write_method_id = j_env->GetMethodID(j_writer_class, "write", "(Ljava/lang/String;)V");
-
-      jstring j_string = j_env->NewStringUTF(structure_output_stream.str().c_str());
-
-      j_env->CallVoidMethod(j_writer, write_method_id, j_string);
-
-      j_env->DeleteLocalRef(j_writer_class);
-      j_env->DeleteLocalRef(j_string);
+      write_to_writer(j_env, j_writer, structure_output_stream.str());
     }
 
   j_env->ReleaseStringUTFChars(j_output_format, output_format);
@@ -129,4 +224,201 @@ JNIEXPORT jstring JNICALL Java_net_sf_osra_OsraLib_getVersion(JNIEnv *j_env, jcl
 {
   return j_env->NewStringUTF(PACKAGE_VERSION);
 }
+
+JNIEXPORT jlong JNICALL Java_net_sf_osra_OsraContext_create(JNIEnv *j_env, jclass j_class,
+    jstring j_osra_dir,
+    jstring j_spelling_file,
+    jstring j_superatom_file)
+{
+  const char *osra_dir = j_env->GetStringUTFChars(j_osra_dir, NULL);
+  const char *spelling_file = j_env->GetStringUTFChars(j_spelling_file, NULL);
+  const char *superatom_file = j_env->GetStringUTFChars(j_superatom_file, NULL);
+
+  osra_context_t *context = osra_create_context(osra_dir, spelling_file, superatom_file);
+
+  j_env->ReleaseStringUTFChars(j_osra_dir, osra_dir);
+  j_env->ReleaseStringUTFChars(j_spelling_file, spelling_file);
+  j_env->ReleaseStringUTFChars(j_superatom_file, superatom_file);
+
+  return (jlong) context;
+}
+
+JNIEXPORT void JNICALL Java_net_sf_osra_OsraContext_destroy(JNIEnv *j_env, jclass j_class, jlong j_context)
+{
+  osra_destroy_context((osra_context_t *) j_context);
+}
+
+// Converts the recognized structures to net.sf.osra.OsraStructure objects and adds them to java.util.List.
+static void add_to_list(JNIEnv *j_env, jobject j_list, const vector<osra_structure_t> &structures)
+{
+  jclass j_list_class = j_env->FindClass("java/util/List");
+  jmethodID add_method_id = j_env->GetMethodID(j_list_class, "add", "(Ljava/lang/Object;)Z");
+  jclass j_structure_class = j_env->FindClass("net/sf/osra/OsraStructure");
+  jmethodID constructor_id = j_env->GetMethodID(j_structure_class, "<init>", "(Ljava/lang/String;DIIIIIDI)V");
+
+  for (vector<osra_structure_t>::const_iterator it = structures.begin(); it != structures.end(); it++)
+    {
+      jstring j_string = j_env->NewStringUTF(it->structure.c_str());
+      jobject j_structure = j_env->NewObject(j_structure_class, constructor_id, j_string, it->confidence, it->page,
+                                             it->x1, it->y1, it->x2, it->y2, it->avg_bond_length, it->resolution);
+
+      j_env->CallBooleanMethod(j_list, add_method_id, j_structure);
+
+      j_env->DeleteLocalRef(j_structure);
+      j_env->DeleteLocalRef(j_string);
+    }
+
+  j_env->DeleteLocalRef(j_structure_class);
+  j_env->DeleteLocalRef(j_list_class);
+}
+
+// Sets the long field of given object to the given time in seconds, converted to nanoseconds.
+static void set_nanos_field(JNIEnv *j_env, jobject j_object, jclass j_class, const char *name, double seconds)
+{
+  j_env->SetLongField(j_object, j_env->GetFieldID(j_class, name, "J"), (jlong) (seconds * 1e9));
+}
+
+// Copies osra_timings_t structure to the fields of net.sf.osra.OsraTimings Java object.
+static void set_timings(JNIEnv *j_env, jobject j_timings, const osra_timings_t &timings)
+{
+  jclass j_class = j_env->GetObjectClass(j_timings);
+
+  set_nanos_field(j_env, j_timings, j_class, "decodeNanos", timings.decode);
+  set_nanos_field(j_env, j_timings, j_class, "binarizationNanos", timings.binarization);
+  set_nanos_field(j_env, j_timings, j_class, "unpaperNanos", timings.unpaper);
+  set_nanos_field(j_env, j_timings, j_class, "segmentationNanos", timings.segmentation);
+  set_nanos_field(j_env, j_timings, j_class, "vectorizationNanos", timings.vectorization);
+  set_nanos_field(j_env, j_timings, j_class, "ocrNanos", timings.ocr);
+  set_nanos_field(j_env, j_timings, j_class, "assemblyNanos", timings.assembly);
+  set_nanos_field(j_env, j_timings, j_class, "conversionNanos", timings.conversion);
+  j_env->SetIntField(j_timings, j_env->GetFieldID(j_class, "pages", "I"), timings.pages);
+  j_env->SetIntField(j_timings, j_env->GetFieldID(j_class, "boxes", "I"), timings.boxes);
+  j_env->SetIntField(j_timings, j_env->GetFieldID(j_class, "structures", "I"), timings.structures);
+
+  j_env->DeleteLocalRef(j_class);
+}
+
+// Reads net.sf.osra.OsraCancellationToken Java object into osra_cancellation_t structure. The cancellation flag is kept in direct
+// buffer, so that it can be checked by the native code without calling back to Java from OpenMP threads.
+static void get_cancellation(JNIEnv *j_env, jobject j_token, osra_cancellation_t &cancellation)
+{
+  jclass j_class = j_env->GetObjectClass(j_token);
+  jobject j_flag = j_env->GetObjectField(j_token, j_env->GetFieldID(j_class, "flag", "Ljava/nio/ByteBuffer;"));
+
+  cancellation.cancelled = (const volatile int *) j_env->GetDirectBufferAddress(j_flag);
+  cancellation.timeout = j_env->CallLongMethod(j_token, j_env->GetMethodID(j_class, "getTimeoutNanos", "()J")) / 1e9;
+
+  j_env->DeleteLocalRef(j_flag);
+  j_env->DeleteLocalRef(j_class);
+}
+
+// Processes the image (or only the given page of it, if page index is not negative) with given options within given context and
+// passes the result to java.io.Writer and/or java.util.List and the stage timings to net.sf.osra.OsraTimings, whichever is not
+// null. Processing is stopped early, if net.sf.osra.OsraCancellationToken is given and gets cancelled.
+static int process_image_with_context(JNIEnv *j_env, jlong j_context, const char *image_data, int image_length, jobject j_writer,
+                                      jobject j_options, jobject j_structures, jint j_page_index, jobject j_timings,
+                                      jobject j_cancellation)
+{
+  java_options_t options;
+  get_options(j_env, j_options, options);
+
+  osra_cancellation_t cancellation;
+  if (j_cancellation != NULL)
+    get_cancellation(j_env, j_cancellation, cancellation);
+
+  ostringstream structure_output_stream;
+  vector<osra_structure_t> structures;
+  osra_timings_t timings;
+
+  int result = osra_process_image(
+                 image_data,
+                 image_length,
+                 structure_output_stream,
+                 options.rotate,
+                 options.invert,
+                 options.input_resolution,
+                 options.threshold,
+                 options.do_unpaper,
+                 options.jaggy,
+                 options.adaptive_option,
+                 options.output_format,
+                 options.embedded_format,
+                 options.output_confidence,
+                 options.show_resolution_guess,
+                 options.show_page,
+                 options.output_coordinates,
+                 options.output_avg_bond_length,
+                 false,
+                 ".",
+                 "",
+                 "",
+                 false,
+                 false,
+                 "",
+                 "",
+                 (const osra_context_t *) j_context,
+                 j_structures != NULL ? &structures : NULL,
+                 j_page_index,
+                 j_timings != NULL ? &timings : NULL,
+                 j_cancellation != NULL ? &cancellation : NULL
+               );
+
+  if (j_writer != NULL)
+    write_to_writer(j_env, j_writer, structure_output_stream.str());
+
+  if (j_structures != NULL)
+    add_to_list(j_env, j_structures, structures);
+
+  if (j_timings != NULL)
+    set_timings(j_env, j_timings, timings);
+
+  return result;
+}
+
+JNIEXPORT jint JNICALL Java_net_sf_osra_OsraContext_processImage(JNIEnv *j_env, jclass j_class,
+    jlong j_context,
+    jbyteArray j_image_data,
+    jobject j_writer,
+    jobject j_options,
+    jobject j_structures,
+    jint j_page_index,
+    jobject j_timings,
+    jobject j_cancellation)
+{
+  const char *image_data = (char *) j_env->GetByteArrayElements(j_image_data, NULL);
+
+  int result = -1;
+
+  if (image_data != NULL)
+    {
+      result = process_image_with_context(j_env, j_context, image_data, j_env->GetArrayLength(j_image_data), j_writer, j_options,
+                                          j_structures, j_page_index, j_timings, j_cancellation);
+
+      j_env->ReleaseByteArrayElements(j_image_data, (jbyte *) image_data, JNI_ABORT);
+    }
+
+  return result;
+}
+
+JNIEXPORT jint JNICALL Java_net_sf_osra_OsraContext_processBuffer(JNIEnv *j_env, jclass j_class,
+    jlong j_context,
+    jobject j_buffer,
+    jint j_offset,
+    jint j_length,
+    jobject j_writer,
+    jobject j_options,
+    jobject j_structures,
+    jint j_page_index,
+    jobject j_timings,
+    jobject j_cancellation)
+{
+  // Direct buffer memory is read in place, without copying it to/from Java heap:
+  const char *buffer = (const char *) j_env->GetDirectBufferAddress(j_buffer);
+
+  if (buffer == NULL)
+    return -1;
+
+  return process_image_with_context(j_env, j_context, buffer + j_offset, j_length, j_writer, j_options, j_structures,
+                                    j_page_index, j_timings, j_cancellation);
+}
 #endif
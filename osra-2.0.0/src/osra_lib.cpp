@@ -26,6 +26,7 @@ St, Fifth Floor, Boston, MA 02110-1301, USA
 #include <math.h> // fabs(double)
 #include <float.h> // FLT_MAX
 #include <limits.h> // INT_MAX
+#include <sys/time.h> // gettimeofday()
 
 #include <list> // sdt::list
 #include <vector> // std::vector
@@ -328,6 +329,7 @@ void split_fragments_and_assemble_structure_record(vector<atom_t> &atom,
             vector<vector<double> > &array_of_ind_conf,
             vector<vector<Image> > &array_of_images,
             vector<vector<box_t> > &array_of_boxes,
+            vector<vector<box_t> > &array_of_coordinate_boxes,
             int &total_boxes,
             double &total_confidence,
             int n_letters,
@@ -434,6 +436,7 @@ void split_fragments_and_assemble_structure_record(vector<atom_t> &atom,
                               array_of_avg_bonds[res_iter].push_back(page_scale * box_scale * avg_bond_length);
                               array_of_ind_conf[res_iter].push_back(confidence);
                               array_of_boxes[res_iter].push_back(rel_box);
+                              array_of_coordinate_boxes[res_iter].push_back(coordinate_box);
                               total_boxes++;
                               total_confidence += confidence;
                               if (verbose)
@@ -491,6 +494,46 @@ int count_recognized_chars(vector<atom_t>  &atom, vector<bond_t>& bond)
 extern job_t *OCR_JOB;
 extern job_t *JOB;
 
+// Function: get_time()
+//
+// Returns the wall-clock time in seconds, which is used to measure the processing stages.
+double get_time()
+{
+      struct timeval tv;
+      gettimeofday(&tv, NULL);
+      return tv.tv_sec + tv.tv_usec / 1e6;
+}
+
+// Function: add_timings()
+//
+// Adds the stage timings and counters of one page to the totals.
+void add_timings(osra_timings_t &total, const osra_timings_t &page)
+{
+      total.decode += page.decode;
+      total.binarization += page.binarization;
+      total.unpaper += page.unpaper;
+      total.segmentation += page.segmentation;
+      total.vectorization += page.vectorization;
+      total.ocr += page.ocr;
+      total.assembly += page.assembly;
+      total.conversion += page.conversion;
+      total.pages += page.pages;
+      total.boxes += page.boxes;
+      total.structures += page.structures;
+}
+
+// Function: is_cancelled()
+//
+// Checks the cancellation flag and the deadline, computed from the time budget of <osra_cancellation_t>.
+bool is_cancelled(const osra_cancellation_t *cancellation, double deadline)
+{
+      if (cancellation == NULL)
+            return false;
+      if (cancellation->cancelled != NULL && *cancellation->cancelled != 0)
+            return true;
+      return deadline != 0 && get_time() > deadline;
+}
+
 //int global_init_state;
 
 // Function: osra_init()
@@ -526,6 +569,49 @@ void __attribute__ ((destructor)) osra_destroy()
       osra_ocr_destroy();
 }
 
+osra_context_t *osra_create_context(const string &osra_dir, const string &spelling_file, const string &superatom_file, bool verbose, int *error)
+{
+      osra_context_t *context = new osra_context_t;
+
+      int err = load_superatom_spelling_maps(context->spelling, context->superatom, osra_dir, spelling_file, superatom_file, verbose);
+      if (err == 0)
+            err = osra_openbabel_init();
+
+      if (error != NULL)
+            *error = err;
+
+      if (err != 0)
+      {
+            delete context;
+            return NULL;
+      }
+
+      return context;
+}
+
+void osra_destroy_context(osra_context_t *context)
+{
+      delete context;
+}
+
+osra_structure_t create_structure_record(const string &structure, double confidence, int page, const box_t &coordinate_box,
+            double avg_bond_length, int resolution)
+{
+      osra_structure_t record;
+
+      record.structure = structure;
+      record.confidence = confidence;
+      record.page = page;
+      record.x1 = coordinate_box.x1;
+      record.y1 = coordinate_box.y1;
+      record.x2 = coordinate_box.x2;
+      record.y2 = coordinate_box.y2;
+      record.avg_bond_length = avg_bond_length;
+      record.resolution = resolution;
+
+      return record;
+}
+
 int osra_process_image(
 #ifdef OSRA_LIB
             const char *image_data,
@@ -556,18 +642,36 @@ int osra_process_image(
             bool debug,
             bool verbose,
             const string &output_image_file_prefix,
-            const string &resize
+            const string &resize,
+            const osra_context_t *context,
+            vector<osra_structure_t> *structures,
+            int page_index,
+            osra_timings_t *timings,
+            const osra_cancellation_t *cancellation
             )
 {
+      if (timings != NULL)
+            memset(timings, 0, sizeof(osra_timings_t));
+
+      double deadline = 0;
+      if (cancellation != NULL && cancellation->timeout > 0)
+            deadline = get_time() + cancellation->timeout;
+      bool cancelled = false;
+
       //if (global_init_state != 0)
       // return global_init_state;
 
       std::transform(output_format.begin(), output_format.end(), output_format.begin(), ::tolower);
       std::transform(embedded_format.begin(), embedded_format.end(), embedded_format.begin(), ::tolower);
 
-      map<string, string> spelling, superatom;
-      int err = load_superatom_spelling_maps(spelling, superatom, osra_dir, spelling_file, superatom_file, verbose);
-      if (err != 0) return err;
+      map<string, string> loaded_spelling, loaded_superatom;
+      if (context == NULL)
+      {
+            int err = load_superatom_spelling_maps(loaded_spelling, loaded_superatom, osra_dir, spelling_file, superatom_file, verbose);
+            if (err != 0) return err;
+      }
+      const map<string, string> &spelling = context != NULL ? context->spelling : loaded_spelling;
+      const map<string, string> &superatom = context != NULL ? context->superatom : loaded_superatom;
 
       string type;
 
@@ -579,6 +683,11 @@ int osra_process_image(
       {
             Image image_typer;
 #ifdef OSRA_LIB
+            if (page_index >= 0)
+            {
+                  image_typer.subImage(page_index);
+                  image_typer.subRange(1);
+            }
             image_typer.ping(blob);
 #else
             image_typer.ping(input_file);
@@ -594,6 +703,23 @@ int osra_process_image(
       if (type.empty())
       {
 #ifdef OSRA_LIB
+            if (page_index > 0)
+            {
+                  // The ping also fails for a corrupt page, so only a page past the end of the document is "out of
+                  // range"; the pages are only counted here, which is once per document when reading page by page:
+                  int page_count = 0;
+                  try
+                  {
+                        page_count = count_pages(blob);
+                  }
+                  catch (...)
+                  {
+                  }
+                  if (page_count > 0 && page_index >= page_count)
+                        return ERROR_PAGE_OUT_OF_RANGE;
+                  cerr << "Cannot detect image type of page " << page_index + 1 << endl;
+                  return ERROR_UNKNOWN_IMAGE_TYPE;
+            }
             cerr << "Cannot detect blob image type" << endl;
 #else
             cerr << "Cannot open file \"" << input_file << '"' << endl;
@@ -644,7 +770,10 @@ int osra_process_image(
       //if input has multiple pages (PDF)
 #ifdef OSRA_LIB
       int page = 1;
+      // Page number offset for the reported structures, when only one page of the document is processed:
+      int first_page = page_index > 0 ? page_index : 0;
 #else
+      int first_page = 0;
       int page = count_pages(input_file);
 #endif
       //vectors to hold Images/Data/boxes
@@ -653,6 +782,8 @@ int osra_process_image(
       vector<vector<double> > pages_of_avg_bonds(page, vector<double> (0));
       vector<vector<double> > pages_of_ind_conf(page, vector<double> (0));
       vector<vector<box_t> > pages_of_boxes(page, vector<box_t> (0));
+      vector<vector<box_t> > pages_of_coordinate_boxes(page, vector<box_t> (0));
+      vector<vector<int> > pages_of_resolutions(page, vector<int> (0));
       vector<vector<arrow_t> > arrows(page, vector<arrow_t>(0));
       vector<vector<plus_t> > pluses(page, vector<plus_t>(0));
 
@@ -669,6 +800,7 @@ int osra_process_image(
       vector<vector<vector<double> > > array_of_avg_bonds_page(page,vector<vector<double> >(num_resolutions)), array_of_ind_conf_page(page,vector<vector<double> >(num_resolutions));
       vector<vector<vector<Image> > > array_of_images_page(page,vector<vector<Image> > (num_resolutions));
       vector<vector<vector<box_t> > > array_of_boxes_page(page,vector<vector<box_t> >(num_resolutions));
+      vector<vector<vector<box_t> > > array_of_coordinate_boxes_page(page,vector<vector<box_t> >(num_resolutions));
 
 #pragma omp parallel for default(shared) private(OCR_JOB,JOB)
       for (int l = 0; l < page; l++)
@@ -676,6 +808,21 @@ int osra_process_image(
             Image image;
             double page_scale=1;
 
+            osra_timings_t page_timings;
+            memset(&page_timings, 0, sizeof(osra_timings_t));
+            page_timings.pages = 1;
+            double stage_start = get_time();
+
+            if (is_cancelled(cancellation, deadline))
+            {
+#pragma omp critical
+                  {
+                        cancelled = true;
+                  }
+                  continue;
+            }
+            bool page_cancelled = false;
+
             int ttt = 0;
 
             if (verbose)
@@ -689,6 +836,11 @@ int osra_process_image(
                   page_scale *= (double) 72 / input_resolution;
 
 #ifdef OSRA_LIB
+            if (page_index >= 0)
+            {
+                  image.subImage(page_index);
+                  image.subRange(1);
+            }
             image.read(blob);
 #else
             ostringstream pname;
@@ -699,6 +851,8 @@ int osra_process_image(
             }
 #endif
             image.modifyImage();
+            page_timings.decode = get_time() - stage_start;
+            stage_start = get_time();
             //Convert image to grayscale
             bool adaptive = convert_to_gray(image, invert, adaptive_option, verbose);
 
@@ -708,6 +862,7 @@ int osra_process_image(
             vector<vector<double> > array_of_avg_bonds(num_resolutions), array_of_ind_conf(num_resolutions);
             vector<vector<Image> > array_of_images(num_resolutions);
             vector<vector<box_t> > array_of_boxes(num_resolutions);
+            vector<vector<box_t> > array_of_coordinate_boxes(num_resolutions);
 
 
             //Scaling of the image
@@ -729,6 +884,8 @@ int osra_process_image(
                   image.backgroundColor(bgColor);
                   image.rotate(rotate);
             }
+            page_timings.binarization = get_time() - stage_start;
+            stage_start = get_time();
 
             double rotation = 0;
             int unpaper_dx = 0;
@@ -743,6 +900,8 @@ int osra_process_image(
                   unpaper_dx +=dx;
                   unpaper_dy +=dy;
             }
+            page_timings.unpaper = get_time() - stage_start;
+            stage_start = get_time();
             //find segments removes tables/text and leaves diagrams.
             // 0.1 is used for THRESHOLD_BOND here to allow for farther processing.
             list<list<list<point_t> > > clusters = find_segments(image, 0.1, bgColor, adaptive, is_reaction, arrows[l], pluses[l], verbose);
@@ -753,6 +912,7 @@ int osra_process_image(
             vector<box_t> boxes;
             int n_boxes = prune_clusters(clusters, boxes);
             std::sort(boxes.begin(), boxes.end(), comp_boxes);
+            page_timings.segmentation = get_time() - stage_start;
 
             if (verbose)
                   cout << "Number of boxes: " << boxes.size() << '.' << endl;
@@ -763,6 +923,12 @@ int osra_process_image(
             //try images at different resolutions
             for (int res_iter = 0; res_iter < num_resolutions; res_iter++)
             {
+                  if (is_cancelled(cancellation, deadline))
+                  {
+                        page_cancelled = true;
+                        break;
+                  }
+
                   int total_boxes = 0;
                   double total_confidence = 0;
 
@@ -794,6 +960,17 @@ int osra_process_image(
                                     && !boxes[k].c.empty() && ((boxes[k].x2 - boxes[k].x1) > 2 * max_font_width || (boxes[k].y2
                                                 - boxes[k].y1) > 2 * max_font_height))
                         {
+                              // The structures found so far are kept, when processing is cancelled:
+                              if (is_cancelled(cancellation, deadline))
+                              {
+                                    page_cancelled = true;
+                                    break;
+                              }
+
+                              double box_start = get_time();
+                              double box_vectorization = 0, box_ocr = 0, box_conversion = 0;
+                              page_timings.boxes++;
+
                               int n_atom = 0, n_bond = 0, n_letters = 0, n_label = 0;
                               vector<atom_t> atom;
                               vector<bond_t> bond;
@@ -815,6 +992,7 @@ int osra_process_image(
                               int width = orig_box.columns();
                               int height = orig_box.rows();
                               Image thick_box;
+                              stage_start = get_time();
                               create_thick_box(orig_box,thick_box,width,height,resolution,working_resolution,box_scale,bgColor,THRESHOLD_BOND,res_iter,thick,jaggy);
 
                               if (verbose)
@@ -828,6 +1006,7 @@ int osra_process_image(
 
                               potrace_state_t * const  st = raster_to_vector(box,bgColor,THRESHOLD_BOND,width,height,working_resolution);
                               potrace_path_t const * const p = st->plist;
+                              box_vectorization = get_time() - stage_start;
 
                               n_atom = find_atoms(p, atom, bond, &n_bond,width,height);
 
@@ -840,8 +1019,10 @@ int osra_process_image(
                               //nick_dev end
 
                               int real_font_width, real_font_height;
+                              stage_start = get_time();
                               n_letters = find_chars(p, orig_box, letters, atom, bond, n_atom, n_bond, height, width, bgColor,
                                           THRESHOLD_BOND, max_font_width, max_font_height, real_font_width, real_font_height,verbose);
+                              box_ocr += get_time() - stage_start;
 
                               if (verbose)
                                     cout << "Number of atoms: " << n_atom << ", bonds: " << n_bond << ", " << n_letters << " letters: " << n_letters << " " << letters << " after find_atoms()" << endl;
@@ -851,8 +1032,10 @@ int osra_process_image(
                               double max_area = avg_bond_length * 5;
                               if (thick)
                                     max_area = avg_bond_length;
+                              stage_start = get_time();
                               n_letters = find_plus_minus(p, orig_box, bgColor, THRESHOLD_BOND, letters, atom, bond, n_atom, n_bond, height, width,
                                           real_font_height, real_font_width, n_letters, avg_bond_length);
+                              box_ocr += get_time() - stage_start;
                               n_atom = find_small_bonds(p, atom, bond, n_atom, &n_bond, max_area, avg_bond_length / 2, 5);
 
                               //remove_small_bonds_in_chars(atom,bond,letters);
@@ -874,11 +1057,13 @@ int osra_process_image(
 
                               n_bond = find_wavy_bonds(bond,n_bond,atom,avg_bond_length);
                               //				if (ttt++ == 0)  debug_image(orig_box, atom, n_atom, bond, n_bond, "tmp.png");                
+                              stage_start = get_time();
                               n_letters = find_fused_chars(bond, n_bond, atom, letters, n_letters, real_font_height,
                                           real_font_width, 0, orig_box, bgColor, THRESHOLD_BOND, 3, verbose);
 
                               n_letters = find_fused_chars(bond, n_bond, atom, letters, n_letters, real_font_height,
                                           real_font_width, '*', orig_box, bgColor, THRESHOLD_BOND, 5, verbose);
+                              box_ocr += get_time() - stage_start;
 
                               flatten_bonds(bond, n_bond, atom, 3);
                               remove_zero_bonds(bond, n_bond, atom);
@@ -897,8 +1082,10 @@ int osra_process_image(
                               n_letters = remove_small_bonds(bond, n_bond, atom, letters, n_letters, real_font_height,
                                           MIN_FONT_HEIGHT, avg_bond_length);
 
+                              stage_start = get_time();
                               n_letters = find_numbers(p, orig_box, letters, atom, bond, n_atom, n_bond, height, width, bgColor,
                                           THRESHOLD_BOND, n_letters);
+                              box_ocr += get_time() - stage_start;
 
                               dist = 4.;
                               if (working_resolution < 300)
@@ -988,16 +1175,23 @@ int osra_process_image(
                               if (verbose)
                                     cout << "Final number of atoms: " << real_atoms << ", bonds: " << real_bonds << ", chars: " << n_letters << '.' << endl;
 
+                              stage_start = get_time();
                               split_fragments_and_assemble_structure_record(atom,n_atom,bond,n_bond,boxes,
-                                          l,k,resolution,res_iter,output_image_file_prefix,image,orig_box,real_font_width,real_font_height,
+                                          first_page + l,k,resolution,res_iter,output_image_file_prefix,image,orig_box,real_font_width,real_font_height,
                                           thickness,avg_bond_length,superatom,real_atoms,real_bonds,bond_max_type,
                                           box_scale,page_scale,rotation,unpaper_dx,unpaper_dy,output_format,embedded_format,is_reaction,show_confidence,
                                           show_resolution_guess,show_page,show_coordinates, show_avg_bond_length,array_of_structures,
-                                          array_of_avg_bonds,array_of_ind_conf,array_of_images,array_of_boxes,total_boxes,total_confidence,
+                                          array_of_avg_bonds,array_of_ind_conf,array_of_images,array_of_boxes,array_of_coordinate_boxes,total_boxes,total_confidence,
                                           recognized_chars,show_learning,res_iter,verbose);
+                              box_conversion = get_time() - stage_start;
 
                               if (st != NULL)
                                     potrace_state_free(st);
+
+                              page_timings.vectorization += box_vectorization;
+                              page_timings.ocr += box_ocr;
+                              page_timings.conversion += box_conversion;
+                              page_timings.assembly += get_time() - box_start - box_vectorization - box_ocr - box_conversion;
                         }
                   array_of_confidence[res_iter] += total_confidence;
                   boxes_per_res[res_iter] += total_boxes;
@@ -1008,6 +1202,11 @@ int osra_process_image(
 
 #pragma omp critical
             {
+                  if (timings != NULL)
+                        add_timings(*timings, page_timings);
+                  if (page_cancelled)
+                        cancelled = true;
+
                   if (show_learning)
                         for (int j = 0; j < num_resolutions; j++)
                               for (unsigned int i = 0; i < array_of_structures[j].size(); i++)
@@ -1018,6 +1217,8 @@ int osra_process_image(
                                     pages_of_avg_bonds[l].push_back(array_of_avg_bonds[j][i]);
                                     pages_of_ind_conf[l].push_back(array_of_ind_conf[j][i]);
                                     pages_of_boxes[l].push_back(array_of_boxes[j][i]);
+                                    pages_of_coordinate_boxes[l].push_back(array_of_coordinate_boxes[j][i]);
+                                    pages_of_resolutions[l].push_back(select_resolution[j]);
                                     total_structure_count++;
                               }
                   else
@@ -1029,6 +1230,7 @@ int osra_process_image(
                               array_of_avg_bonds_page[l][j] = array_of_avg_bonds[j];
                               array_of_ind_conf_page[l][j] = array_of_ind_conf[j];
                               array_of_boxes_page[l][j] = array_of_boxes[j];
+                              array_of_coordinate_boxes_page[l][j] = array_of_coordinate_boxes[j];
                         }
 
             }
@@ -1060,6 +1262,8 @@ int osra_process_image(
                   pages_of_avg_bonds[l] = array_of_avg_bonds_page[l][max_res];
                   pages_of_ind_conf[l] = array_of_ind_conf_page[l][max_res];
                   pages_of_boxes[l] = array_of_boxes_page[l][max_res];
+                  pages_of_coordinate_boxes[l] = array_of_coordinate_boxes_page[l][max_res];
+                  pages_of_resolutions[l] = vector<int> (pages_of_structures[l].size(), select_resolution[max_res]);
                   total_structure_count += array_of_structures_page[l][max_res].size();
             }
 
@@ -1106,6 +1310,11 @@ int osra_process_image(
                         if (output_format != "mol" && !is_reaction)
                         {
                               out_stream << pages_of_structures[l][i];
+                              if (timings != NULL)
+                                    timings->structures++;
+                              if (structures != NULL)
+                                    structures->push_back(create_structure_record(pages_of_structures[l][i], pages_of_ind_conf[l][i], first_page + l + 1,
+                                                pages_of_coordinate_boxes[l][i], pages_of_avg_bonds[l][i], pages_of_resolutions[l][i]));
                               // Hans, canonical and z coords
                               /*
                               if (output_format == "can" || output_format == "smi") { // create 3D sdf representation
@@ -1172,10 +1381,16 @@ int osra_process_image(
                   }
             }
       }
-      // Output the structure with maximum confidence value:
-      if (output_format == "mol")
+      // Output the structure with maximum confidence value (there may be none, if processing was cancelled):
+      if (output_format == "mol" && !pages_of_structures[l_index].empty())
       {
             out_stream << pages_of_structures[l_index][i_index];
+            if (timings != NULL)
+                  timings->structures++;
+            if (structures != NULL)
+                  structures->push_back(create_structure_record(pages_of_structures[l_index][i_index], pages_of_ind_conf[l_index][i_index],
+                              first_page + l_index + 1, pages_of_coordinate_boxes[l_index][i_index], pages_of_avg_bonds[l_index][i_index],
+                              pages_of_resolutions[l_index][i_index]));
             if (!output_image_file_prefix.empty())
             {
                   ostringstream fname;
@@ -1200,5 +1415,5 @@ int osra_process_image(
             outfile.close();
 #endif
 
-      return 0;
+      return cancelled ? PROCESSING_CANCELLED : 0;
 }
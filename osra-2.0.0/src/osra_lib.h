@@ -24,20 +24,167 @@
 
 #include <string> // std::string
 #include <ostream> // std:ostream
+#include <map> // std::map
+#include <vector> // std::vector
 
 using namespace std;
 
+//
+// Section: Types
+//
+
+// struct: osra_context_s
+//      holds the data, which does not depend on the processed image and therefore can be loaded once and shared
+//      between several calls of <osra_process_image()>
+struct osra_context_s
+{
+  // map: spelling
+  //    spelling correction dictionary, loaded from spelling file
+  map<string, string> spelling;
+  // map: superatom
+  //    dictionary of superatom labels mapped to SMILES, loaded from superatom file
+  map<string, string> superatom;
+};
+
+// typedef: osra_context_t
+//      defines osra_context_t type based on osra_context_s struct
+typedef struct osra_context_s osra_context_t;
+
+// struct: osra_structure_s
+//      describes one recognized structure; filled by <osra_process_image()> when the caller asks for structured output
+struct osra_structure_s
+{
+  // string: structure
+  //    the structure encoded in requested output format (SMILES, MOL file, ...)
+  string structure;
+  // double: confidence
+  //    confidence estimate
+  double confidence;
+  // int: page
+  //    page number, starting from 1
+  int page;
+  // int: x1, y1, x2, y2
+  //    coordinates of the box surrounding the structure on the page
+  int x1, y1, x2, y2;
+  // double: avg_bond_length
+  //    average bond length, as measured on the page
+  double avg_bond_length;
+  // int: resolution
+  //    the resolution, at which the structure was recognized, dpi
+  int resolution;
+};
+
+// typedef: osra_structure_t
+//      defines osra_structure_t type based on osra_structure_s struct
+typedef struct osra_structure_s osra_structure_t;
+
+// struct: osra_timings_s
+//      wall-clock time spent in each processing stage, seconds, and the amount of processed data; filled by
+//      <osra_process_image()> when the caller asks for it. Pages are processed in parallel by the CLI utility, so the sum of
+//      the stages may exceed the elapsed time of the call
+struct osra_timings_s
+{
+  // double: decode
+  //    reading and rasterization of the image
+  double decode;
+  // double: binarization
+  //    conversion to grayscale (including adaptive thresholding), scaling and rotation
+  double binarization;
+  // double: unpaper
+  //    deskewing and cleaning
+  double unpaper;
+  // double: segmentation
+  //    finding and pruning of the clusters, which may contain structures
+  double segmentation;
+  // double: vectorization
+  //    thickening/thinning of the boxes and tracing them with potrace
+  double vectorization;
+  // double: ocr
+  //    detection and recognition of characters
+  double ocr;
+  // double: assembly
+  //    the rest of the box analysis: atoms, bonds and labels
+  double assembly;
+  // double: conversion
+  //    splitting the fragments and conversion of the molecules to output format by OpenBabel
+  double conversion;
+  // int: pages
+  //    number of processed pages
+  int pages;
+  // int: boxes
+  //    number of analysed boxes, counting every resolution
+  int boxes;
+  // int: structures
+  //    number of reported structures
+  int structures;
+};
+
+// typedef: osra_timings_t
+//      defines osra_timings_t type based on osra_timings_s struct
+typedef struct osra_timings_s osra_timings_t;
+
+// struct: osra_cancellation_s
+//      allows to stop <osra_process_image()> before it completes; the flag and the deadline are checked before each page,
+//      resolution and box, so the call returns as soon as the current box is done
+struct osra_cancellation_s
+{
+  // int *: cancelled
+  //    if not NULL, points to the flag, which is set to non-zero value by another thread to cancel processing
+  const volatile int *cancelled;
+  // double: timeout
+  //    the time budget of the call, seconds; 0 means no limit
+  double timeout;
+};
+
+// typedef: osra_cancellation_t
+//      defines osra_cancellation_t type based on osra_cancellation_s struct
+typedef struct osra_cancellation_s osra_cancellation_t;
+
 //
 // Section: Functions
 //
 
+// Function: osra_create_context()
+//
+// Loads the spelling and superatom dictionaries and checks the OpenBabel engine, so that the returned context can be passed
+// to any number of <osra_process_image()> calls. The context is not modified by processing and can be shared between threads.
+//
+// Parameters:
+//      osra_dir - the directory to look for dictionaries in, if they are not found in default location
+//      spelling_file - custom spelling dictionary file
+//      superatom_file - custom superatom dictionary file
+//      verbose - print debug info
+//      error - if not NULL, receives the error code in case of failure
+//
+// Returns:
+//      new context which should be released by <osra_destroy_context()> or NULL in case of error
+osra_context_t *osra_create_context(
+  const string &osra_dir = "",
+  const string &spelling_file = "",
+  const string &superatom_file = "",
+  bool verbose = false,
+  int *error = NULL
+);
+
+// Function: osra_destroy_context()
+//
+// Releases the context, created by <osra_create_context()>.
+void osra_destroy_context(osra_context_t *context);
+
 // Function: osra_process_image()
 //
 // Parameters:
 //      image_data - the binary image
+//      context - the context created by <osra_create_context()>; if NULL, dictionaries are loaded for this call only
+//      structures - if not NULL, receives the recognized structures together with their confidence, page, coordinates etc.
+//      page_index - if not negative, only this page (counting from 0) of multi-page document is processed; used by library to
+//                   process a document page by page
+//      timings - if not NULL, receives the time spent in each processing stage
+//      cancellation - if not NULL, defines the cancellation flag and the time budget of the call
 //
 // Returns:
-//      0, if processing was completed successfully
+//      0, if processing was completed successfully or PROCESSING_CANCELLED, if it was cancelled and only the structures found
+//      so far were reported
 int osra_process_image(
 #ifdef OSRA_LIB
   const char *image_data,
@@ -68,5 +215,10 @@ int osra_process_image(
   bool debug = false,
   bool verbose = false,
   const string &output_image_file_prefix = "",
-  const string &resize = ""
+  const string &resize = "",
+  const osra_context_t *context = NULL,
+  vector<osra_structure_t> *structures = NULL,
+  int page_index = -1,
+  osra_timings_t *timings = NULL,
+  const osra_cancellation_t *cancellation = NULL
 );
@@ -34,6 +34,7 @@ extern "C" {
 
 #include "osra.h"
 #include "osra_ocr.h"
+#include "osra_threads.h"
 
 #ifdef HAVE_CUNEIFORM_LIB
 #include <cuneiform.h>
@@ -235,6 +236,8 @@ char get_atom_label(const Magick::Image &image, const Magick::ColorGray &bg, int
 
   #pragma omp critical
   {
+    osra_library_lock lock;
+
     y--;
 
     pixmap[y * width + x] = 2;
@@ -28,6 +28,7 @@
 
 #include "osra_common.h" // trim()
 #include "osra_openbabel.h"
+#include "osra_threads.h"
 #include "osra.h"
 #include "osra_stl.h"
 #include "mcdlutil.h"
@@ -526,6 +527,7 @@ molecule_statistics_t calculate_molecule_statistics(vector<atom_t> &atom, const
 
   #pragma omp critical
   {
+    osra_library_lock lock;
     OBMol mol;
     create_molecule(mol, atom, bond, n_bond, avg_bond_length, molecule_statistics, false, NULL, superatom, 0, NULL, false);
     mol.Clear();
@@ -545,6 +547,7 @@ const string get_formatted_structure(vector<atom_t> &atom, const vector<bond_t>
   ostringstream strstr;
   #pragma omp critical
   {
+    osra_library_lock lock;
     OBMol mol;
     string confidence_parameters;
     create_molecule(mol, atom, bond, n_bond, avg_bond_length, molecule_statistics, format == "sdf" || format == "mol" || format == "sd" || format == "mdl", &confidence, superatom, 
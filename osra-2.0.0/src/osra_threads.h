@@ -0,0 +1,47 @@
+/******************************************************************************
+ OSRA: Optical Structure Recognition Application
+
+ Created by Igor Filippov, 2007-2013 (igor.v.filippov@gmail.com)
+
+ This program is free software; you can redistribute it and/or modify it under
+ the terms of the GNU General Public License as published by the Free Software
+ Foundation; either version 2 of the License, or (at your option) any later
+ version.
+
+ This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License along with
+ this program; if not, write to the Free Software Foundation, Inc., 51 Franklin
+ St, Fifth Floor, Boston, MA 02110-1301, USA
+ *****************************************************************************/
+
+// Header: osra_threads.h
+//
+// Defines the lock for calls to libraries which are not thread-safe.
+//
+#ifndef OSRA_THREADS_H
+#define OSRA_THREADS_H
+
+//
+// Section: Classes
+//
+
+// Class: osra_library_lock
+//
+// Holds a process-wide mutex while it is in scope. Declared at the start of every "#pragma omp critical" block that
+// calls the OCR engines, OpenBabel or CImg: OpenMP critical sections only exist in builds with OpenMP, while the
+// engines of the Java bridge call the library from several threads of their own in any build.
+class osra_library_lock
+{
+public:
+  osra_library_lock();
+  ~osra_library_lock();
+
+private:
+  osra_library_lock(const osra_library_lock &);
+  osra_library_lock &operator=(const osra_library_lock &);
+};
+
+#endif